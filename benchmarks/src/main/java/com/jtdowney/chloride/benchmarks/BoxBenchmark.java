@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.benchmarks;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.boxes.Box;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.Security;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoxBenchmark {
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private KeyPair sender;
+    private KeyPair recipient;
+    private Box box;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setup() throws ChlorideException {
+        Security.addProvider(new BouncyCastleProvider());
+        sender = KeyPair.generate();
+        recipient = KeyPair.generate();
+        box = new Box(sender.getPrivateKey(), recipient.getPublicKey());
+        plaintext = new byte[size];
+        new Random(size).nextBytes(plaintext);
+        ciphertext = box.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws ChlorideException {
+        return box.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws ChlorideException {
+        return box.decrypt(ciphertext);
+    }
+
+    @Benchmark
+    public byte[] encryptWithNewBox() throws ChlorideException {
+        return new Box(sender.getPrivateKey(), recipient.getPublicKey()).encrypt(plaintext);
+    }
+
+    @Benchmark
+    public SecretKey sharedKey() throws ChlorideException {
+        return box.sharedKey();
+    }
+}
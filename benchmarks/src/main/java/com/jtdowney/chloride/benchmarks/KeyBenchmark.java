@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.benchmarks;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.PrivateKey;
+import com.jtdowney.chloride.keys.PublicKey;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.Security;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyBenchmark {
+    // twice the size of the public key cache, so cycling through them never hits the cache
+    private static final int DISTINCT_PUBLIC_KEYS = 8192;
+
+    private byte[] publicKey;
+    private byte[] privateKey;
+
+    /**
+     * Public keys that no other thread parses, so each thread misses the shared cache on every call
+     */
+    @State(Scope.Thread)
+    public static class DistinctPublicKeys {
+        private byte[][] encodings;
+        private int next;
+
+        @Setup
+        public void setup() throws ChlorideException {
+            Security.addProvider(new BouncyCastleProvider());
+            encodings = new byte[DISTINCT_PUBLIC_KEYS][];
+            for (int i = 0; i < DISTINCT_PUBLIC_KEYS; i++) {
+                encodings[i] = KeyPair.generate().getPublicKey().getBytes();
+            }
+        }
+
+        private byte[] next() {
+            byte[] encoded = encodings[next];
+            next = (next + 1) % DISTINCT_PUBLIC_KEYS;
+            return encoded;
+        }
+    }
+
+    @Setup
+    public void setup() throws ChlorideException {
+        Security.addProvider(new BouncyCastleProvider());
+        KeyPair pair = KeyPair.generate();
+        publicKey = pair.getPublicKey().getBytes();
+        privateKey = pair.getPrivateKey().getBytes();
+    }
+
+    @Benchmark
+    public KeyPair generateKeyPair() throws ChlorideException {
+        return KeyPair.generate();
+    }
+
+    @Benchmark
+    public SecretKey generateSecretKey() throws ChlorideException {
+        return SecretKey.generate();
+    }
+
+    @Benchmark
+    public PublicKey parsePublicKey() throws ChlorideException {
+        return new PublicKey(publicKey);
+    }
+
+    @Benchmark
+    public PublicKey parsePublicKeyUncached(DistinctPublicKeys keys) throws ChlorideException {
+        return new PublicKey(keys.next());
+    }
+
+    @Benchmark
+    public PrivateKey parsePrivateKey() throws ChlorideException {
+        return new PrivateKey(privateKey);
+    }
+}
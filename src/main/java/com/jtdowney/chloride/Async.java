@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Support for the asynchronous variants of the box operations
+ * <p>
+ * Operations on payloads of at most {@link #INLINE_THRESHOLD} bytes finish faster than a hand off to
+ * another thread would, so they run on the calling thread and return a completed future. Larger
+ * operations run on the given executor, or on a shared pool of daemon threads sized to the number of
+ * processors. The shared pool's queue is bounded; when it is full the operation is rejected and its future
+ * fails with a {@link java.util.concurrent.RejectedExecutionException} rather than running on the calling
+ * thread.
+ */
+public final class Async {
+    /**
+     * The largest payload, in bytes, that is processed on the calling thread
+     */
+    public static final int INLINE_THRESHOLD = 16 * 1024;
+
+    private static final int QUEUE_SIZE_PER_THREAD = 256;
+
+    private Async() {
+    }
+
+    /**
+     * Retrieve the shared executor used when no executor is given
+     * @return the default crypto executor
+     */
+    public static Executor defaultExecutor() {
+        return DefaultExecutor.INSTANCE;
+    }
+
+    private static final class DefaultExecutor {
+        private static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            int threads = Runtime.getRuntime().availableProcessors();
+            final AtomicInteger count = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(runnable, "chloride-crypto-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+
+            return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD), factory,
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Per-thread NativePRNG instances for nonces, salts and seeds
+ * <p>
+ * Every thread gets its own generator, so threads drawing random values do not contend on a single
+ * instance. The boxes and key classes all draw their randomness from here.
+ */
+public final class Randoms {
+    private static final ThreadLocal<SecureRandom> RANDOMS = new ThreadLocal<>();
+
+    private Randoms() {
+    }
+
+    /**
+     * Retrieve the calling thread's generator, creating it on first use
+     * @return the NativePRNG instance for this thread
+     * @throws NoSuchAlgorithmException when NativePRNG is not available
+     */
+    public static SecureRandom get() throws NoSuchAlgorithmException {
+        SecureRandom random = RANDOMS.get();
+        if (random == null) {
+            random = SecureRandom.getInstance("NativePRNG");
+            RANDOMS.set(random);
+        }
+
+        return random;
+    }
+}
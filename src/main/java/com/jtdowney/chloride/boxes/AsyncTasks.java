@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the asynchronous variants of the box operations
+ */
+final class AsyncTasks {
+    private AsyncTasks() {
+    }
+
+    /**
+     * Run a task asynchronously. When the executor rejects the task the future fails with the
+     * {@link RejectedExecutionException}.
+     * @param task the task to run
+     * @param inline true to run the task on the calling thread
+     * @param executor the executor to run the task on when it is not run inline
+     * @param <T> the type of the result
+     * @return a future that completes with the task's result or exception
+     */
+    static <T> CompletableFuture<T> supply(final Callable<T> task, boolean inline, Executor executor) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        if (inline) {
+            complete(future, task);
+            return future;
+        }
+
+        try {
+            executor.execute(() -> complete(future, task));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Callable<T> task) {
+        try {
+            future.complete(task.call());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of a batch operation, holding either a value or an error for each record
+ */
+public class BatchResult {
+    private final byte[][] values;
+    private final ChlorideException[] errors;
+
+    BatchResult(int size) {
+        this.values = new byte[size][];
+        this.errors = new ChlorideException[size];
+    }
+
+    void succeed(int index, byte[] value) {
+        this.values[index] = value;
+    }
+
+    void fail(int index, ChlorideException error) {
+        this.errors[index] = error;
+    }
+
+    /**
+     * Retrieve the number of records in the batch
+     * @return the number of records
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Check whether the given record was processed successfully
+     * @param index index of the record
+     * @return true when the record has a value
+     */
+    public boolean isSuccess(int index) {
+        return errors[index] == null;
+    }
+
+    /**
+     * Retrieve the value for the given record
+     * @param index index of the record
+     * @return the processed value
+     * @throws ChlorideException the error for the record when it failed
+     */
+    public byte[] get(int index) throws ChlorideException {
+        if (errors[index] != null) {
+            throw errors[index];
+        }
+
+        return values[index];
+    }
+
+    /**
+     * Retrieve the error for the given record
+     * @param index index of the record
+     * @return the error, or null when the record succeeded
+     */
+    public ChlorideException getError(int index) {
+        return errors[index];
+    }
+
+    /**
+     * Retrieve the indexes of every failed record
+     * @return the failed indexes in ascending order
+     */
+    public List<Integer> getFailures() {
+        List<Integer> failures = new ArrayList<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                failures.add(i);
+            }
+        }
+
+        return failures;
+    }
+}
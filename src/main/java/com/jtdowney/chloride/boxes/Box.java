@@ -22,6 +22,7 @@
 
 package com.jtdowney.chloride.boxes;
 
+import com.jtdowney.chloride.Async;
 import com.jtdowney.chloride.ChlorideException;
 import com.jtdowney.chloride.keys.PrivateKey;
 import com.jtdowney.chloride.keys.PublicKey;
@@ -31,13 +32,20 @@ import javax.crypto.KeyAgreement;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Box for asymmetric encryption
+ * <p>
+ * The shared key is derived from the key pair on first use and reused for every later message, so the
+ * key agreement only runs once per box.
  */
 public class Box {
     private final PrivateKey privateKey;
     private final PublicKey publicKey;
+    private volatile SecretBox secretBox;
 
     /**
      * Create a new box with the given keys
@@ -56,11 +64,7 @@ public class Box {
      * @throws ChlorideException when an error occurs during encryption
      */
     public byte[] encrypt(byte[] plaintext) throws ChlorideException {
-        try {
-            return this.deriveSecretBox().encrypt(plaintext);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new ChlorideException(e);
-        }
+        return this.precompute().encrypt(plaintext);
     }
 
     /**
@@ -70,21 +74,120 @@ public class Box {
      * @throws ChlorideException when an error occurs during encryption
      */
     public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
-        try {
-            return this.deriveSecretBox().decrypt(ciphertext);
-        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-            throw new ChlorideException(e);
+        return this.precompute().decrypt(ciphertext);
+    }
+
+    /**
+     * Encrypt the given plaintext asynchronously. Plaintexts of at most {@link Async#INLINE_THRESHOLD} bytes are
+     * encrypted on the calling thread once the shared key has been derived.
+     * @param plaintext value to encrypt
+     * @return a future for the encrypted value
+     * @see #encrypt(byte[])
+     */
+    public CompletableFuture<byte[]> encryptAsync(byte[] plaintext) {
+        return encryptAsync(plaintext, Async.defaultExecutor());
+    }
+
+    /**
+     * Encrypt the given plaintext asynchronously on the given executor. Plaintexts of at most
+     * {@link Async#INLINE_THRESHOLD} bytes are encrypted on the calling thread once the shared key has been derived.
+     * @param plaintext value to encrypt
+     * @param executor the executor to run larger operations on
+     * @return a future for the encrypted value
+     * @see #encrypt(byte[])
+     */
+    public CompletableFuture<byte[]> encryptAsync(final byte[] plaintext, Executor executor) {
+        return AsyncTasks.supply(() -> encrypt(plaintext), this.secretBox != null && plaintext.length <= Async.INLINE_THRESHOLD, executor);
+    }
+
+    /**
+     * Decrypt the given ciphertext asynchronously. Ciphertexts of at most {@link Async#INLINE_THRESHOLD} bytes are
+     * decrypted on the calling thread once the shared key has been derived.
+     * @param ciphertext value to decrypt
+     * @return a future for the decrypted value
+     * @see #decrypt(byte[])
+     */
+    public CompletableFuture<byte[]> decryptAsync(byte[] ciphertext) {
+        return decryptAsync(ciphertext, Async.defaultExecutor());
+    }
+
+    /**
+     * Decrypt the given ciphertext asynchronously on the given executor. Ciphertexts of at most
+     * {@link Async#INLINE_THRESHOLD} bytes are decrypted on the calling thread once the shared key has been derived.
+     * @param ciphertext value to decrypt
+     * @param executor the executor to run larger operations on
+     * @return a future for the decrypted value
+     * @see #decrypt(byte[])
+     */
+    public CompletableFuture<byte[]> decryptAsync(final byte[] ciphertext, Executor executor) {
+        return AsyncTasks.supply(() -> decrypt(ciphertext), this.secretBox != null && ciphertext.length <= Async.INLINE_THRESHOLD, executor);
+    }
+
+    /**
+     * Encrypt a batch of plaintexts
+     * @param plaintexts values to encrypt
+     * @return the encrypted values, or the error for each record that failed
+     * @throws ChlorideException when an error occurs setting up encryption
+     * @see SecretBox#encryptAll(List)
+     */
+    public BatchResult encryptAll(List<byte[]> plaintexts) throws ChlorideException {
+        return this.precompute().encryptAll(plaintexts);
+    }
+
+    /**
+     * Decrypt a batch of ciphertexts
+     * @param ciphertexts values to decrypt
+     * @return the decrypted values, or the error for each record that failed
+     * @throws ChlorideException when an error occurs setting up decryption
+     * @see SecretBox#decryptAll(List)
+     */
+    public BatchResult decryptAll(List<byte[]> ciphertexts) throws ChlorideException {
+        return this.precompute().decryptAll(ciphertexts);
+    }
+
+    /**
+     * Derive the shared key between the two parties, similar to NaCl's crypto_box_beforenm. Messages
+     * encrypted with a {@link SecretBox} over this key are compatible with this box.
+     * @return the shared secret key
+     * @throws ChlorideException when the key agreement fails
+     */
+    public SecretKey sharedKey() throws ChlorideException {
+        return deriveSharedKey(this.privateKey, this.publicKey);
+    }
+
+    /**
+     * Retrieve the secret box over the shared key, deriving it on first use. This is the precomputed
+     * state used by {@link #encrypt(byte[])} and {@link #decrypt(byte[])}, similar to NaCl's
+     * crypto_box_afternm.
+     * @return the secret box for the shared key
+     * @throws ChlorideException when the key agreement fails
+     */
+    public SecretBox precompute() throws ChlorideException {
+        SecretBox box = this.secretBox;
+        if (box == null) {
+            box = new SecretBox(this.sharedKey());
+            this.secretBox = box;
         }
+
+        return box;
     }
 
-    private SecretBox deriveSecretBox() throws NoSuchAlgorithmException, InvalidKeyException {
-        KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
-        keyAgreement.init(this.privateKey.getKey());
-        keyAgreement.doPhase(this.publicKey.getKey(), true);
-        byte[] z = keyAgreement.generateSecret();
+    static SecretKey deriveSharedKey(PrivateKey privateKey, PublicKey publicKey) throws ChlorideException {
+        try {
+            if (privateKey.getCurve() != publicKey.getCurve()) {
+                throw new InvalidKeyException("keys are on different curves");
+            }
+
+            KeyAgreement keyAgreement = KeyAgreement.getInstance(privateKey.getCurve().getAgreementAlgorithm());
+            keyAgreement.init(privateKey.getKey());
+            keyAgreement.doPhase(publicKey.getKey(), true);
+            byte[] z = keyAgreement.generateSecret();
 
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        byte[] key = digest.digest(z);
-        return new SecretBox(new SecretKey(key));
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] key = digest.digest(z);
+            return new SecretKey(key);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | IllegalStateException e) {
+            throw new ChlorideException(e);
+        }
     }
 }
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.PublicKey;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+
+/**
+ * Duplex session for exchanging many messages with one peer over an ordered transport
+ * <p>
+ * The key agreement runs once when the session is created. Each side then sends the peer its
+ * {@link #getHandshake() handshake}, a fresh random value, and passes the peer's handshake to
+ * {@link #start(byte[])}. Separate send and receive keys are derived with HKDF from the shared key salted
+ * with both handshakes, so every session uses new keys even between the same two key pairs and the
+ * sequence number nonces are never reused. Each message's nonce is its sequence number, which both sides
+ * track, so messages carry only the ciphertext and the 16 byte tag and no randomness is drawn per
+ * message. A message must be decrypted in the order it was encrypted; replayed, reordered or dropped
+ * messages fail to decrypt and leave the session unchanged. After a configurable number of messages
+ * each direction moves to a new key derived from the previous one, which is then discarded.
+ */
+public class BoxSession {
+    /**
+     * The default number of messages encrypted under one key before rekeying
+     */
+    public static final long DEFAULT_REKEY_INTERVAL = 1L << 24;
+
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final String LOW_TO_HIGH = "chloride box session low to high";
+    private static final String HIGH_TO_LOW = "chloride box session high to low";
+    private static final String SESSION_CONTEXT = "chloride box session";
+    private static final int HANDSHAKE_LENGTH = 32;
+
+    private final SecretKey shared;
+    private final boolean low;
+    private final long rekeyInterval;
+    private final byte[] handshake = new byte[HANDSHAKE_LENGTH];
+    private volatile Direction send;
+    private volatile Direction receive;
+
+    /**
+     * Create a new session between the given key pair and peer
+     * @param keyPair the local key pair
+     * @param peer the peer's public key
+     * @throws ChlorideException when the key agreement fails
+     */
+    public BoxSession(KeyPair keyPair, PublicKey peer) throws ChlorideException {
+        this(keyPair, peer, DEFAULT_REKEY_INTERVAL);
+    }
+
+    /**
+     * Create a new session between the given key pair and peer that rekeys after the given number of messages
+     * @param keyPair the local key pair
+     * @param peer the peer's public key
+     * @param rekeyInterval the number of messages in each direction encrypted under one key
+     * @throws ChlorideException when the key agreement fails
+     */
+    public BoxSession(KeyPair keyPair, PublicKey peer, long rekeyInterval) throws ChlorideException {
+        if (rekeyInterval <= 0) {
+            throw new IllegalArgumentException("rekeyInterval must be positive");
+        }
+
+        // Both sides must agree on which key is used in which direction, so order the two public keys
+        this.shared = Box.deriveSharedKey(keyPair.getPrivateKey(), peer);
+        this.low = compare(keyPair.getPublicKey().getBytes(), peer.getBytes()) <= 0;
+        this.rekeyInterval = rekeyInterval;
+        try {
+            Randoms.get().nextBytes(handshake);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Retrieve the handshake to send to the peer before the session is started
+     * @return the 32 byte handshake
+     */
+    public byte[] getHandshake() {
+        return handshake.clone();
+    }
+
+    /**
+     * Start the session with the handshake received from the peer. Messages can be encrypted and
+     * decrypted once the session has started.
+     * @param peerHandshake the peer's handshake
+     * @throws IllegalArgumentException when the handshake is not 32 bytes long
+     * @throws IllegalStateException when the session has already started
+     */
+    public synchronized void start(byte[] peerHandshake) {
+        if (peerHandshake.length != HANDSHAKE_LENGTH) {
+            throw new IllegalArgumentException("handshake must be " + HANDSHAKE_LENGTH + " bytes");
+        } else if (send != null) {
+            throw new IllegalStateException("session already started");
+        }
+
+        byte[] salt = ByteBuffer.allocate(2 * HANDSHAKE_LENGTH)
+                .put(low ? handshake : peerHandshake)
+                .put(low ? peerHandshake : handshake)
+                .array();
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(shared.getBytes(), salt, SESSION_CONTEXT.getBytes(StandardCharsets.UTF_8)));
+        byte[] root = new byte[32];
+        hkdf.generateBytes(root, 0, root.length);
+
+        SecretKey sessionKey = new SecretKey(root);
+        this.receive = new Direction(sessionKey, low ? HIGH_TO_LOW : LOW_TO_HIGH, rekeyInterval);
+        this.send = new Direction(sessionKey, low ? LOW_TO_HIGH : HIGH_TO_LOW, rekeyInterval);
+    }
+
+    /**
+     * Calculate the size of the ciphertext for a plaintext of the given length
+     * @param plaintextLength the plaintext length
+     * @return the ciphertext length
+     */
+    public int outputSize(int plaintextLength) {
+        return plaintextLength + TAG_LENGTH;
+    }
+
+    /**
+     * Encrypt the next message to the peer
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     * @throws IllegalStateException when the session has not started
+     */
+    public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        return started(send).process(Cipher.ENCRYPT_MODE, plaintext);
+    }
+
+    /**
+     * Decrypt the next message from the peer
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption or the message is out of order
+     * @throws IllegalStateException when the session has not started
+     */
+    public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        Direction direction = started(receive);
+        if (ciphertext.length < TAG_LENGTH) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        return direction.process(Cipher.DECRYPT_MODE, ciphertext);
+    }
+
+    private static Direction started(Direction direction) {
+        if (direction == null) {
+            throw new IllegalStateException("session not started");
+        }
+
+        return direction;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (a[i] & 0xff) - (b[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return a.length - b.length;
+    }
+
+    private static final class Direction {
+        private final String context;
+        private final long rekeyInterval;
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private SecretKey key;
+        private SecretKeySpec keySpec;
+        private Cipher cipher;
+        private long epoch;
+        private long sequence;
+
+        private Direction(SecretKey shared, String context, long rekeyInterval) {
+            this.context = context;
+            this.rekeyInterval = rekeyInterval;
+            this.key = shared.deriveSubkey(context, 0);
+            this.keySpec = new SecretKeySpec(key.getBytes(), "AES");
+        }
+
+        private synchronized byte[] process(int mode, byte[] input) throws ChlorideException {
+            try {
+                if (sequence == rekeyInterval) {
+                    rekey();
+                }
+
+                if (cipher == null) {
+                    cipher = CipherEngine.defaultEngine().newCipher();
+                }
+
+                ByteBuffer.wrap(nonce).putInt(0).putLong(sequence);
+                cipher.init(mode, keySpec, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+                byte[] output = cipher.doFinal(input);
+                sequence++;
+                return output;
+            } catch (AEADBadTagException e) {
+                throw new ChlorideException(new AEADBadTagException("message failed authentication or is out of order"));
+            } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException | InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                throw new ChlorideException(e);
+            }
+        }
+
+        private void rekey() {
+            epoch++;
+            key = key.deriveSubkey(context, epoch);
+            keySpec = new SecretKeySpec(key.getBytes(), "AES");
+            sequence = 0;
+        }
+    }
+}
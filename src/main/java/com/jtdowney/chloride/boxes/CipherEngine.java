@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JCE provider used by {@link SecretBox} for AES-GCM
+ * <p>
+ * Every engine produces the same wire format, so values encrypted with one engine can be decrypted with
+ * any other. By default the JDK's own provider is used when it supports AES-GCM, because it benefits
+ * from the AES-NI and carry-less multiplication intrinsics in HotSpot. Bouncy Castle is used otherwise.
+ */
+public final class CipherEngine {
+    static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final int BENCHMARK_SIZE = 16 * 1024;
+    private static final int BENCHMARK_ROUNDS = 200;
+    private static final CipherEngine JDK = new CipherEngine("SunJCE", null);
+    private static final CipherEngine BOUNCY_CASTLE = new CipherEngine("BC", null);
+    private static volatile CipherEngine defaultEngine;
+    private static volatile CipherEngine fastestEngine;
+
+    private final String providerName;
+    private final Provider provider;
+    private final ThreadLocal<Cipher> ciphers = new ThreadLocal<>();
+
+    private CipherEngine(String providerName, Provider provider) {
+        this.providerName = providerName;
+        this.provider = provider;
+    }
+
+    /**
+     * The JDK's built in SunJCE provider
+     * @return the JDK engine
+     */
+    public static CipherEngine jdk() {
+        return JDK;
+    }
+
+    /**
+     * The Bouncy Castle provider, which must be installed under the name "BC"
+     * @return the Bouncy Castle engine
+     */
+    public static CipherEngine bouncyCastle() {
+        return BOUNCY_CASTLE;
+    }
+
+    /**
+     * An installed provider with the given name. Each engine keeps one cipher per thread, so an engine
+     * should be created once and shared rather than created for every box.
+     * @param name the provider name
+     * @return an engine using the provider
+     */
+    public static CipherEngine provider(String name) {
+        return new CipherEngine(name, null);
+    }
+
+    /**
+     * The given provider instance, which does not need to be installed
+     * @param provider the provider
+     * @return an engine using the provider
+     */
+    public static CipherEngine provider(Provider provider) {
+        return new CipherEngine(provider.getName(), provider);
+    }
+
+    /**
+     * The JDK engine when it supports AES-GCM, otherwise Bouncy Castle
+     * @return the default engine
+     */
+    public static CipherEngine defaultEngine() {
+        CipherEngine engine = defaultEngine;
+        if (engine == null) {
+            engine = jdk().isAvailable() ? jdk() : bouncyCastle();
+            defaultEngine = engine;
+        }
+
+        return engine;
+    }
+
+    /**
+     * The fastest available engine, found by timing bulk encryption with each candidate the first time
+     * it is called
+     * @return the fastest engine
+     */
+    public static CipherEngine fastest() {
+        CipherEngine engine = fastestEngine;
+        if (engine == null) {
+            List<CipherEngine> candidates = new ArrayList<>();
+            candidates.add(jdk());
+            candidates.add(bouncyCastle());
+
+            long best = Long.MAX_VALUE;
+            for (CipherEngine candidate : candidates) {
+                long elapsed = candidate.benchmark();
+                if (elapsed < best) {
+                    best = elapsed;
+                    engine = candidate;
+                }
+            }
+
+            if (engine == null) {
+                engine = defaultEngine();
+            }
+
+            fastestEngine = engine;
+        }
+
+        return engine;
+    }
+
+    /**
+     * Retrieve the name of the provider
+     * @return the provider name
+     */
+    public String getName() {
+        return providerName;
+    }
+
+    /**
+     * Check whether the provider is installed and supports AES-GCM
+     * @return true when the engine can be used
+     */
+    public boolean isAvailable() {
+        try {
+            newCipher();
+            return true;
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            return false;
+        }
+    }
+
+    Cipher cipher() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = newCipher();
+            ciphers.set(cipher);
+        }
+
+        return cipher;
+    }
+
+    Cipher newCipher() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+        if (provider != null) {
+            return Cipher.getInstance(TRANSFORMATION, provider);
+        }
+
+        return Cipher.getInstance(TRANSFORMATION, providerName);
+    }
+
+    private long benchmark() {
+        try {
+            Cipher cipher = newCipher();
+            SecretKeySpec key = new SecretKeySpec(new byte[32], "AES");
+            byte[] nonce = new byte[12];
+            byte[] input = new byte[BENCHMARK_SIZE];
+            byte[] output = new byte[BENCHMARK_SIZE + 16];
+
+            long elapsed = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                    nonce[0]++;
+                    nonce[1] = (byte) pass;
+                    cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, nonce));
+                    cipher.doFinal(input, 0, input.length, output, 0);
+                }
+
+                elapsed = System.nanoTime() - start;
+            }
+
+            return elapsed;
+        } catch (GeneralSecurityException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CipherEngine(" + providerName + ")";
+    }
+}
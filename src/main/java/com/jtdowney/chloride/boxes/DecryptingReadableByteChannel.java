@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel that decrypts the {@link SecretStream} format. Each segment is authenticated before any of
+ * its plaintext is returned, and a stream that ends without a final segment is rejected. The buffers are
+ * allocated once the header has been read, so steady state reads do not allocate. When the underlying
+ * channel is non-blocking, a read returns whatever plaintext is ready, which may be nothing.
+ */
+class DecryptingReadableByteChannel implements ReadableByteChannel {
+    private final SecretBox box;
+    private final Cipher cipher;
+    private final ReadableByteChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(SecretStream.HEADER_LENGTH);
+    private SecretStream stream;
+    private ByteBuffer sealed;
+    private ByteBuffer plaintext;
+    private long index;
+    private boolean finished;
+    private boolean open = true;
+
+    DecryptingReadableByteChannel(SecretBox box, Cipher cipher, ReadableByteChannel channel) {
+        this.box = box;
+        this.cipher = cipher;
+        this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+
+        int read = 0;
+        while (dst.hasRemaining()) {
+            if (plaintext != null && plaintext.hasRemaining()) {
+                int count = Math.min(dst.remaining(), plaintext.remaining());
+                int limit = plaintext.limit();
+                plaintext.limit(plaintext.position() + count);
+                dst.put(plaintext);
+                plaintext.limit(limit);
+                read += count;
+            } else if (finished) {
+                return read == 0 ? -1 : read;
+            } else if (!readSegment()) {
+                break;
+            }
+        }
+
+        return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        channel.close();
+    }
+
+    private boolean readSegment() throws IOException {
+        try {
+            if (stream == null) {
+                while (header.hasRemaining()) {
+                    int count = channel.read(header);
+                    if (count == -1) {
+                        throw new EOFException("truncated stream header");
+                    } else if (count == 0) {
+                        return false;
+                    }
+                }
+
+                stream = box.openStream(header.array());
+                plaintext = ByteBuffer.allocateDirect(stream.getSegmentSize());
+                plaintext.limit(0);
+                // One byte past the segment tells whether it is the final segment
+                sealed = ByteBuffer.allocateDirect(stream.getSegmentSize() + SecretStream.TAG_LENGTH + 1);
+            }
+
+            boolean last = false;
+            while (sealed.hasRemaining()) {
+                int count = channel.read(sealed);
+                if (count == -1) {
+                    last = true;
+                    break;
+                } else if (count == 0) {
+                    return false;
+                }
+            }
+
+            sealed.flip();
+            if (!last) {
+                sealed.limit(sealed.limit() - 1);
+            }
+
+            plaintext.clear();
+            stream.decryptSegment(cipher, index++, last, sealed, plaintext);
+            plaintext.flip();
+            finished = last;
+
+            sealed.limit(sealed.capacity());
+            sealed.compact();
+            if (last) {
+                sealed.clear();
+            }
+
+            return true;
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read only channel over the plaintext of a {@link SecretStream} ciphertext. Positions and sizes are
+ * in plaintext bytes, and reads only decrypt the segments they touch. The header is read and the final
+ * segment authenticated once when the channel is opened, so reading many ranges through one channel
+ * avoids repeating that work. The channel is not safe for use by multiple threads at once.
+ */
+public class DecryptingSeekableByteChannel implements SeekableByteChannel {
+    private final SecretStreamReader reader;
+    private final SeekableByteChannel channel;
+    private long position;
+    private boolean open = true;
+
+    DecryptingSeekableByteChannel(SecretStreamReader reader, SeekableByteChannel channel) {
+        this.reader = reader;
+        this.channel = channel;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int count = reader.read(position, dst);
+        if (count > 0) {
+            position += count;
+        }
+
+        return count;
+    }
+
+    /**
+     * Decrypt a range of the plaintext without moving the channel's position
+     * @param offset offset of the range in the plaintext
+     * @param length length of the range
+     * @return the decrypted range
+     * @throws ChlorideException when an error occurs during decryption, the channel is closed or the range
+     * extends past the end of the plaintext
+     * @throws IllegalArgumentException when the offset or length is negative
+     */
+    public byte[] decryptRange(long offset, int length) throws ChlorideException {
+        if (!open) {
+            throw new ChlorideException(new ClosedChannelException());
+        }
+
+        return reader.readRange(offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("position must not be negative");
+        }
+
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return reader.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        channel.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
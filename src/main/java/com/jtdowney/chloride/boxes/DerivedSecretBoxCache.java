@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.keys.SecretKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of secret boxes over subkeys derived from one master key
+ * <p>
+ * Applications with many tenants can keep a single master key and derive each tenant's key with
+ * {@link SecretKey#deriveSubkey(String, long)} when it is first needed. The least recently used subkeys
+ * are evicted once the cache is full, and every subkey is evicted once it has been cached longer than
+ * the configured time to live. The cache is safe to share between threads; key derivation runs outside
+ * of the cache lock.
+ */
+public class DerivedSecretBoxCache {
+    private final SecretKey masterKey;
+    private final String context;
+    private final long timeToLiveNanos;
+    private final Map<Long, CachedBox> boxes;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a new cache for subkeys of the given master key
+     * @param masterKey the key to derive subkeys from
+     * @param context a string naming the purpose of the subkeys
+     * @param maximumSize the maximum number of subkeys to keep
+     * @param timeToLive how long a subkey is kept after it is derived
+     * @param unit the unit of the time to live
+     */
+    public DerivedSecretBoxCache(SecretKey masterKey, String context, final int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+
+        this.masterKey = masterKey;
+        this.context = context;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.boxes = new LinkedHashMap<Long, CachedBox>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedBox> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the secret box for the given subkey, deriving it if it is not cached
+     * @param id the subkey identifier
+     * @return the secret box over the subkey
+     */
+    public SecretBox get(long id) {
+        long now = System.nanoTime();
+        CachedBox entry;
+        synchronized (this.boxes) {
+            entry = this.boxes.get(id);
+            if (entry != null && now - entry.expiresAt >= 0) {
+                this.boxes.remove(id);
+                entry = null;
+            }
+        }
+
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.box;
+        }
+
+        misses.incrementAndGet();
+        entry = new CachedBox(new SecretBox(masterKey.deriveSubkey(context, id)), now + timeToLiveNanos);
+        synchronized (this.boxes) {
+            this.boxes.put(id, entry);
+        }
+
+        return entry.box;
+    }
+
+    /**
+     * Remove the given subkey from the cache
+     * @param id the subkey identifier
+     */
+    public void invalidate(long id) {
+        synchronized (this.boxes) {
+            this.boxes.remove(id);
+        }
+    }
+
+    /**
+     * Retrieve the number of subkeys currently cached, including any that have expired but not yet been evicted
+     * @return the number of cached subkeys
+     */
+    public int size() {
+        synchronized (this.boxes) {
+            return this.boxes.size();
+        }
+    }
+
+    /**
+     * Retrieve the number of lookups served from the cache
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Retrieve the number of lookups that derived a new subkey
+     * @return the number of cache misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class CachedBox {
+        private final SecretBox box;
+        private final long expiresAt;
+
+        private CachedBox(SecretBox box, long expiresAt) {
+            this.box = box;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
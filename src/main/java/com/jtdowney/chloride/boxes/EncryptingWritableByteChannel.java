@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel that encrypts into the {@link SecretStream} format. Both buffers are allocated up front, so
+ * steady state writes do not allocate. When the underlying channel is non-blocking, a write stops as
+ * soon as the channel stops accepting bytes and returns how much of the source was consumed; the rest
+ * of the sealed segment is sent on the next write.
+ * <p>
+ * The final segment is written by {@link #finish()}, which never waits on the underlying channel. Callers
+ * using a non-blocking channel should call it, for example whenever the channel becomes writable, until
+ * it returns true and then close the channel. Closing calls {@link #finish()} once, so with a blocking
+ * channel closing alone is enough.
+ */
+public class EncryptingWritableByteChannel implements WritableByteChannel {
+    private final SecretStream stream;
+    private final Cipher cipher;
+    private final WritableByteChannel channel;
+    private final ByteBuffer plaintext;
+    private final ByteBuffer sealed;
+    private long index;
+    private boolean finished;
+    private boolean open = true;
+
+    EncryptingWritableByteChannel(SecretStream stream, Cipher cipher, WritableByteChannel channel) {
+        this.stream = stream;
+        this.cipher = cipher;
+        this.channel = channel;
+        this.plaintext = ByteBuffer.allocateDirect(stream.getSegmentSize());
+        this.sealed = ByteBuffer.allocateDirect(Math.max(SecretStream.HEADER_LENGTH, stream.getSegmentSize() + SecretStream.TAG_LENGTH));
+        this.sealed.put(stream.getHeader());
+        this.sealed.flip();
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        } else if (finished) {
+            throw new IllegalStateException("stream already finished");
+        }
+
+        int written = 0;
+        while (flush() && src.hasRemaining()) {
+            if (!plaintext.hasRemaining()) {
+                // More input is waiting, so the full segment cannot be the final one
+                seal(false);
+                continue;
+            }
+
+            int count = Math.min(src.remaining(), plaintext.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + count);
+            plaintext.put(src);
+            src.limit(limit);
+            written += count;
+        }
+
+        return written;
+    }
+
+    /**
+     * Write the final segment without waiting on the underlying channel. No more plaintext can be written
+     * once this has been called.
+     * @return true when every segment has been written, false when the underlying channel stopped
+     * accepting bytes and this needs to be called again
+     * @throws IOException when an error occurs writing to the underlying channel
+     */
+    public boolean finish() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+
+        if (!finished) {
+            if (!flush()) {
+                return false;
+            }
+
+            seal(true);
+            finished = true;
+        }
+
+        return flush();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Finish the stream and close the underlying channel. When the underlying channel cannot take the rest
+     * of the stream yet, both channels are left open so that {@link #finish()} can be retried.
+     * @throws IOException when the stream could not be finished or an error occurs closing the channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        boolean drained;
+        try {
+            drained = finish();
+        } catch (IOException | RuntimeException e) {
+            open = false;
+            channel.close();
+            throw e;
+        }
+
+        if (!drained) {
+            throw new IOException("stream not finished, call finish() until it returns true before closing");
+        }
+
+        open = false;
+        channel.close();
+    }
+
+    private boolean flush() throws IOException {
+        while (sealed.hasRemaining()) {
+            if (channel.write(sealed) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void seal(boolean last) throws IOException {
+        try {
+            plaintext.flip();
+            sealed.clear();
+            stream.encryptSegment(cipher, index++, last, plaintext, sealed);
+            sealed.flip();
+            plaintext.clear();
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+    }
+}
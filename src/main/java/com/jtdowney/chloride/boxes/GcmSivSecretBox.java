@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.GCMSIVBlockCipher;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+
+import javax.crypto.IllegalBlockSizeException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Box for symmetric encryption with AES-256-GCM-SIV (RFC 8452)
+ * <p>
+ * GCM-SIV is resistant to nonce misuse: repeating a nonce only reveals whether two messages were
+ * identical, instead of breaking confidentiality and authenticity as it does with GCM. This makes a
+ * deterministic mode possible, where the nonce is fixed and identical plaintexts under the same key
+ * always produce identical ciphertexts, so encrypted data can still be deduplicated. Only use the
+ * deterministic mode when revealing which messages are equal is acceptable.
+ * <p>
+ * Ciphertexts start with an algorithm identifier that also records the mode. Randomized ciphertexts
+ * continue with the 96-bit nonce; deterministic ciphertexts omit it. Both end with the encrypted value
+ * and the tag, and the identifier is authenticated as well. Either mode decrypts both formats.
+ */
+public class GcmSivSecretBox {
+    /**
+     * Algorithm identifier of ciphertexts encrypted with a random nonce
+     */
+    public static final byte RANDOMIZED_ALGORITHM_ID = 0x02;
+
+    /**
+     * Algorithm identifier of deterministic ciphertexts
+     */
+    public static final byte DETERMINISTIC_ALGORITHM_ID = 0x03;
+
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+    private static final ThreadLocal<GCMSIVBlockCipher> CIPHERS = new ThreadLocal<>();
+
+    private final KeyParameter key;
+    private final boolean deterministic;
+
+    /**
+     * Create a secret box that encrypts with random nonces
+     * @param key secret key to encrypt with
+     */
+    public GcmSivSecretBox(SecretKey key) {
+        this(key, false);
+    }
+
+    /**
+     * Create a secret box that encrypts with random nonces or deterministically
+     * @param key secret key to encrypt with
+     * @param deterministic true to encrypt identical plaintexts to identical ciphertexts
+     */
+    public GcmSivSecretBox(SecretKey key, boolean deterministic) {
+        this.key = new KeyParameter(key.getBytes());
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Calculate the size of the ciphertext produced for a plaintext of the given length
+     * @param plaintextLength length of the plaintext
+     * @return length of the ciphertext, including the header and authentication tag
+     */
+    public int outputSize(int plaintextLength) {
+        return headerLength(deterministic) + plaintextLength + TAG_LENGTH;
+    }
+
+    /**
+     * Encrypt the given plaintext
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        try {
+            byte[] ciphertext = new byte[outputSize(plaintext.length)];
+            byte[] nonce = new byte[NONCE_LENGTH];
+            if (deterministic) {
+                ciphertext[0] = DETERMINISTIC_ALGORITHM_ID;
+            } else {
+                Randoms.get().nextBytes(nonce);
+                ciphertext[0] = RANDOMIZED_ALGORITHM_ID;
+                System.arraycopy(nonce, 0, ciphertext, 1, NONCE_LENGTH);
+            }
+
+            int headerLength = headerLength(deterministic);
+            GCMSIVBlockCipher cipher = initCipher(true, ciphertext[0], nonce);
+            int length = cipher.processBytes(plaintext, 0, plaintext.length, ciphertext, headerLength);
+            cipher.doFinal(ciphertext, headerLength + length);
+            return ciphertext;
+        } catch (NoSuchAlgorithmException | InvalidCipherTextException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Decrypt the given ciphertext, in either format
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        try {
+            if (ciphertext.length < 1) {
+                throw new IllegalBlockSizeException("ciphertext too short");
+            }
+
+            byte algorithmId = ciphertext[0];
+            if (algorithmId != RANDOMIZED_ALGORITHM_ID && algorithmId != DETERMINISTIC_ALGORITHM_ID) {
+                throw new InvalidAlgorithmParameterException("unsupported algorithm identifier");
+            }
+
+            int headerLength = headerLength(algorithmId == DETERMINISTIC_ALGORITHM_ID);
+            if (ciphertext.length < headerLength + TAG_LENGTH) {
+                throw new IllegalBlockSizeException("ciphertext too short");
+            }
+
+            byte[] nonce = new byte[NONCE_LENGTH];
+            System.arraycopy(ciphertext, 1, nonce, 0, headerLength - 1);
+
+            GCMSIVBlockCipher cipher = initCipher(false, algorithmId, nonce);
+            byte[] plaintext = new byte[ciphertext.length - headerLength - TAG_LENGTH];
+            int length = cipher.processBytes(ciphertext, headerLength, ciphertext.length - headerLength, plaintext, 0);
+            cipher.doFinal(plaintext, length);
+            return plaintext;
+        } catch (IllegalBlockSizeException | InvalidAlgorithmParameterException | InvalidCipherTextException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    private static int headerLength(boolean deterministic) {
+        return deterministic ? 1 : 1 + NONCE_LENGTH;
+    }
+
+    private GCMSIVBlockCipher initCipher(boolean forEncryption, byte algorithmId, byte[] nonce) {
+        GCMSIVBlockCipher cipher = CIPHERS.get();
+        if (cipher == null) {
+            cipher = new GCMSIVBlockCipher(new AESEngine());
+            CIPHERS.set(cipher);
+        }
+
+        cipher.init(forEncryption, new AEADParameters(key, TAG_LENGTH * 8, nonce, new byte[]{algorithmId}));
+        return cipher;
+    }
+}
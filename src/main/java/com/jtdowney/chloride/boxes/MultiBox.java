@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.PrivateKey;
+import com.jtdowney.chloride.keys.PublicKey;
+import com.jtdowney.chloride.keys.SecretKey;
+
+import javax.crypto.IllegalBlockSizeException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Box for asymmetric encryption of one message to many recipients
+ * <p>
+ * The payload is encrypted once with a random {@link SecretKey}, which is then wrapped for each
+ * recipient with a subkey of the key shared between the sender and that recipient. The subkey is derived
+ * for key wrapping only, so a wrapped key can never be confused with an ordinary {@link Box} message
+ * between the same two parties. Each wrapped key is labelled
+ * with a short identifier of the recipient's public key, so a recipient finds its slot directly rather
+ * than by trial decryption. Shared keys are cached, so repeated messages to the same recipients skip
+ * the key agreement.
+ * <p>
+ * A multi-recipient box provides confidentiality only. The payload key is not bound to the sender, so
+ * every recipient learns a key that decrypts the payload and can re-wrap a forged payload for the other
+ * recipients; a recipient cannot tell whether a message came from the sender or from another recipient.
+ * Sign the message with {@link SignBox} when recipients need to authenticate the sender.
+ */
+public class MultiBox {
+    private static final int KEY_ID_LENGTH = 8;
+    private static final int WRAPPED_KEY_LENGTH = 12 + 32 + 16;
+    private static final int SLOT_LENGTH = KEY_ID_LENGTH + WRAPPED_KEY_LENGTH;
+    private static final int SHARED_KEY_CACHE_SIZE = 1024;
+    private static final int RECIPIENTS_PER_TASK = 32;
+    private static final String WRAP_CONTEXT = "chloride multi box key wrap";
+
+    private final PublicKey publicKey;
+    private final SharedKeyCache sharedKeys;
+    private final ExecutorService executor;
+
+    /**
+     * Create a new multi-recipient box for the given key pair
+     * @param privateKey the local private key
+     * @param publicKey the local public key
+     */
+    public MultiBox(PrivateKey privateKey, PublicKey publicKey) {
+        this(privateKey, publicKey, null);
+    }
+
+    /**
+     * Create a new multi-recipient box that wraps keys for large recipient lists on the given executor
+     * @param privateKey the local private key
+     * @param publicKey the local public key
+     * @param executor executor to wrap keys on, may be null
+     */
+    public MultiBox(PrivateKey privateKey, PublicKey publicKey, ExecutorService executor) {
+        this.publicKey = publicKey;
+        this.sharedKeys = new SharedKeyCache(privateKey, SHARED_KEY_CACHE_SIZE, WRAP_CONTEXT);
+        this.executor = executor;
+    }
+
+    /**
+     * Calculate the identifier used to label a recipient's slot
+     * @param publicKey the recipient's public key
+     * @return the 8 byte key identifier
+     * @throws ChlorideException when the digest is unavailable
+     */
+    public static byte[] keyId(PublicKey publicKey) throws ChlorideException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(publicKey.getBytes());
+            return Arrays.copyOf(digest, KEY_ID_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Encrypt the given plaintext for every recipient
+     * @param recipients the recipients' public keys
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public byte[] encrypt(final List<PublicKey> recipients, byte[] plaintext) throws ChlorideException {
+        final SecretKey dataKey = SecretKey.generate();
+        byte[] payload = new SecretBox(dataKey).encrypt(plaintext);
+
+        final ByteBuffer result = ByteBuffer.allocate(4 + recipients.size() * SLOT_LENGTH + payload.length);
+        result.putInt(recipients.size());
+        wrapAll(recipients, dataKey, result);
+        result.position(4 + recipients.size() * SLOT_LENGTH);
+        result.put(payload);
+        return result.array();
+    }
+
+    /**
+     * Decrypt the given ciphertext
+     * @param sender the sender's public key
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption or this box is not a recipient
+     */
+    public byte[] decrypt(PublicKey sender, byte[] ciphertext) throws ChlorideException {
+        ByteBuffer input = ByteBuffer.wrap(ciphertext);
+        if (input.remaining() < 4) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        int count = input.getInt();
+        if (count < 0 || (long) count * SLOT_LENGTH > input.remaining()) {
+            throw new ChlorideException(new IllegalBlockSizeException("invalid recipient count"));
+        }
+
+        byte[] id = keyId(this.publicKey);
+        byte[] slotId = new byte[KEY_ID_LENGTH];
+        byte[] wrappedKey = new byte[WRAPPED_KEY_LENGTH];
+        SecretBox shared = sharedKeys.get(sender);
+        ChlorideException failure = null;
+        for (int i = 0; i < count; i++) {
+            input.position(4 + i * SLOT_LENGTH);
+            input.get(slotId);
+            if (!Arrays.equals(id, slotId)) {
+                continue;
+            }
+
+            input.get(wrappedKey);
+            try {
+                SecretKey dataKey = new SecretKey(shared.decrypt(wrappedKey));
+                int payloadOffset = 4 + count * SLOT_LENGTH;
+                return new SecretBox(dataKey).decrypt(Arrays.copyOfRange(ciphertext, payloadOffset, ciphertext.length));
+            } catch (ChlorideException e) {
+                // identifiers can collide, keep looking at the remaining slots
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        throw new ChlorideException(new InvalidKeyException("no slot for this recipient"));
+    }
+
+    private void wrapAll(final List<PublicKey> recipients, final SecretKey dataKey, final ByteBuffer output) throws ChlorideException {
+        if (executor == null || recipients.size() <= RECIPIENTS_PER_TASK) {
+            wrap(recipients, 0, recipients.size(), dataKey, output);
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>();
+        for (int start = 0; start < recipients.size(); start += RECIPIENTS_PER_TASK) {
+            final int first = start;
+            final int last = Math.min(recipients.size(), start + RECIPIENTS_PER_TASK);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws ChlorideException {
+                    wrap(recipients, first, last, dataKey, output.duplicate());
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChlorideException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ChlorideException) {
+                throw (ChlorideException) e.getCause();
+            }
+
+            throw new ChlorideException(e);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void wrap(List<PublicKey> recipients, int first, int last, SecretKey dataKey, ByteBuffer output) throws ChlorideException {
+        byte[] key = dataKey.getBytes();
+        for (int i = first; i < last; i++) {
+            PublicKey recipient = recipients.get(i);
+            output.position(4 + i * SLOT_LENGTH);
+            output.put(keyId(recipient));
+            output.put(sharedKeys.get(recipient).encrypt(key));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.prng.SP800SecureRandomBuilder;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Strategy for generating the 96-bit nonces used by {@link SecretBox}
+ * <p>
+ * Every strategy produces nonces that do not repeat for the lifetime of the strategy. The counter
+ * strategy guarantees this outright by refusing to produce more nonces than its limit, while the random
+ * strategies rely on the low chance of a 96-bit collision. Use one counter strategy per key.
+ */
+public abstract class NonceStrategy {
+    static final int NONCE_LENGTH = 12;
+
+    private static final long MAX_COUNTER = 1L << 32;
+    private static final int BUFFER_LENGTH = NONCE_LENGTH * 256;
+
+    NonceStrategy() {
+    }
+
+    /**
+     * Random nonces from a per-thread NativePRNG instance. This is the default strategy.
+     * @return the random strategy
+     */
+    public static NonceStrategy random() {
+        return new RandomNonceStrategy();
+    }
+
+    /**
+     * Counter nonces with a random 64-bit prefix and a 32-bit message counter, allowing up to 2^32
+     * messages
+     * @return a new counter strategy
+     */
+    public static NonceStrategy counter() {
+        return counter(MAX_COUNTER);
+    }
+
+    /**
+     * Counter nonces with a random 64-bit prefix and a 32-bit message counter. Once the limit is reached
+     * every encryption fails and the key must be rotated.
+     * @param limit the maximum number of messages, at most 2^32
+     * @return a new counter strategy
+     */
+    public static NonceStrategy counter(long limit) {
+        if (limit <= 0 || limit > MAX_COUNTER) {
+            throw new IllegalArgumentException("limit must be between 1 and 2^32");
+        }
+
+        return new CounterNonceStrategy(limit);
+    }
+
+    /**
+     * Random nonces from a per-thread AES-256 CTR DRBG, seeded from the system generator and drawn in
+     * blocks so the system generator is rarely touched
+     * @return the buffered random strategy
+     */
+    public static NonceStrategy bufferedRandom() {
+        return new BufferedRandomNonceStrategy();
+    }
+
+    /**
+     * Write the given number of consecutive 12 byte nonces into the array
+     */
+    abstract void next(byte[] nonces, int offset, int count) throws ChlorideException;
+
+    private static class RandomNonceStrategy extends NonceStrategy {
+        @Override
+        void next(byte[] nonces, int offset, int count) throws ChlorideException {
+            try {
+                byte[] bytes = new byte[NONCE_LENGTH * count];
+                Randoms.get().nextBytes(bytes);
+                System.arraycopy(bytes, 0, nonces, offset, bytes.length);
+            } catch (NoSuchAlgorithmException e) {
+                throw new ChlorideException(e);
+            }
+        }
+    }
+
+    private static class CounterNonceStrategy extends NonceStrategy {
+        private final byte[] prefix = new byte[8];
+        private final AtomicLong counter = new AtomicLong();
+        private final long limit;
+
+        CounterNonceStrategy(long limit) {
+            this.limit = limit;
+            new SecureRandom().nextBytes(prefix);
+        }
+
+        @Override
+        void next(byte[] nonces, int offset, int count) throws ChlorideException {
+            long first = counter.getAndAdd(count);
+            if (first < 0 || first + count > limit) {
+                counter.set(limit);
+                throw new ChlorideException(new IllegalStateException("nonce limit reached, the key must be rotated"));
+            }
+
+            for (int i = 0; i < count; i++) {
+                long value = first + i;
+                int position = offset + i * NONCE_LENGTH;
+                System.arraycopy(prefix, 0, nonces, position, prefix.length);
+                nonces[position + 8] = (byte) (value >>> 24);
+                nonces[position + 9] = (byte) (value >>> 16);
+                nonces[position + 10] = (byte) (value >>> 8);
+                nonces[position + 11] = (byte) value;
+            }
+        }
+    }
+
+    private static class BufferedRandomNonceStrategy extends NonceStrategy {
+        private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<>();
+
+        @Override
+        void next(byte[] nonces, int offset, int count) throws ChlorideException {
+            Buffer buffer = BUFFERS.get();
+            if (buffer == null) {
+                buffer = new Buffer();
+                BUFFERS.set(buffer);
+            }
+
+            int length = NONCE_LENGTH * count;
+            while (length > 0) {
+                if (buffer.position == buffer.bytes.length) {
+                    buffer.refill();
+                }
+
+                int chunk = Math.min(length, buffer.bytes.length - buffer.position);
+                System.arraycopy(buffer.bytes, buffer.position, nonces, offset, chunk);
+                // Never hand out the same bytes twice
+                Arrays.fill(buffer.bytes, buffer.position, buffer.position + chunk, (byte) 0);
+                buffer.position += chunk;
+                offset += chunk;
+                length -= chunk;
+            }
+        }
+
+        private static class Buffer {
+            private final SecureRandom drbg;
+            private final byte[] bytes = new byte[BUFFER_LENGTH];
+            private int position = BUFFER_LENGTH;
+
+            Buffer() {
+                SecureRandom entropy = new SecureRandom();
+                byte[] nonce = new byte[16];
+                entropy.nextBytes(nonce);
+                this.drbg = new SP800SecureRandomBuilder(entropy, false).buildCTR(new AESEngine(), 256, nonce, false);
+            }
+
+            void refill() {
+                drbg.nextBytes(bytes);
+                position = 0;
+            }
+        }
+    }
+}
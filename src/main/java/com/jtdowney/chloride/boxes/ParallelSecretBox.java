@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.SecretKey;
+
+import javax.crypto.IllegalBlockSizeException;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Box for symmetric encryption of large values across multiple cores
+ * <p>
+ * Values are split into independently authenticated segments which are encrypted and decrypted in
+ * parallel. The result uses the same self-describing format as
+ * {@link SecretBox#encryptingOutputStream(java.io.OutputStream)}, so either side can be streamed. Values
+ * that fit in a single segment are handled on the calling thread.
+ */
+public class ParallelSecretBox implements Closeable {
+    private static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+    private static final int TASKS_PER_THREAD = 4;
+
+    private final SecretBox box;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int segmentSize;
+    private final boolean ownsExecutor;
+
+    /**
+     * Create a parallel box that uses one thread per available processor
+     * @param key secret key to encrypt with
+     */
+    public ParallelSecretBox(SecretKey key) {
+        this(key, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a parallel box with its own pool of the given number of threads
+     * @param key secret key to encrypt with
+     * @param threads number of threads to use
+     */
+    public ParallelSecretBox(SecretKey key, int threads) {
+        this(key, new ForkJoinPool(threads), threads, DEFAULT_SEGMENT_SIZE, true);
+    }
+
+    /**
+     * Create a parallel box that runs on the given executor. The executor is not shut down by
+     * {@link #close()}.
+     * @param key secret key to encrypt with
+     * @param executor executor to run segments on
+     * @param parallelism number of threads the executor is expected to provide
+     * @param segmentSize the plaintext size of each segment, at most 16 MiB
+     */
+    public ParallelSecretBox(SecretKey key, ExecutorService executor, int parallelism, int segmentSize) {
+        this(key, executor, parallelism, segmentSize, false);
+    }
+
+    private ParallelSecretBox(SecretKey key, ExecutorService executor, int parallelism, int segmentSize, boolean ownsExecutor) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+
+        if (segmentSize <= 0 || segmentSize > SecretStream.MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be between 1 and " + SecretStream.MAX_SEGMENT_SIZE);
+        }
+
+        this.box = new SecretBox(key);
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.segmentSize = segmentSize;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Encrypt the given plaintext
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public byte[] encrypt(final byte[] plaintext) throws ChlorideException {
+        long size = SecretStream.ciphertextSize(plaintext.length, segmentSize);
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new ChlorideException(new IllegalBlockSizeException("plaintext too large"));
+        }
+
+        final SecretStream stream = box.newStream(segmentSize);
+        final byte[] ciphertext = new byte[(int) size];
+        System.arraycopy(stream.getHeader(), 0, ciphertext, 0, SecretStream.HEADER_LENGTH);
+
+        final long segments = SecretStream.segmentCount(plaintext.length, segmentSize);
+        run(segments, new SegmentTask() {
+            @Override
+            public void process(long index) throws ChlorideException {
+                int offset = (int) (index * segmentSize);
+                int length = Math.min(segmentSize, plaintext.length - offset);
+                int outputOffset = (int) (SecretStream.HEADER_LENGTH + index * (segmentSize + SecretStream.TAG_LENGTH));
+                stream.encryptSegment(box.cipher(), index, index == segments - 1, plaintext, offset, length, ciphertext, outputOffset);
+            }
+        });
+
+        return ciphertext;
+    }
+
+    /**
+     * Decrypt the given ciphertext
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public byte[] decrypt(final byte[] ciphertext) throws ChlorideException {
+        if (ciphertext.length < SecretStream.HEADER_LENGTH) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        byte[] header = new byte[SecretStream.HEADER_LENGTH];
+        System.arraycopy(ciphertext, 0, header, 0, header.length);
+        final SecretStream stream = box.openStream(header);
+        final int streamSegmentSize = stream.getSegmentSize();
+        final byte[] plaintext = new byte[(int) stream.plaintextSize(ciphertext.length)];
+
+        final long segments = SecretStream.segmentCount(plaintext.length, streamSegmentSize);
+        run(segments, new SegmentTask() {
+            @Override
+            public void process(long index) throws ChlorideException {
+                long offset = SecretStream.HEADER_LENGTH + index * (streamSegmentSize + SecretStream.TAG_LENGTH);
+                int length = (int) Math.min(streamSegmentSize + SecretStream.TAG_LENGTH, ciphertext.length - offset);
+                stream.decryptSegment(box.cipher(), index, index == segments - 1, ciphertext, (int) offset, length, plaintext, (int) (index * streamSegmentSize));
+            }
+        });
+
+        return plaintext;
+    }
+
+    /**
+     * Shut down the thread pool if it was created by this box
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private void run(long segments, final SegmentTask task) throws ChlorideException {
+        if (segments < 2) {
+            for (long index = 0; index < segments; index++) {
+                task.process(index);
+            }
+
+            return;
+        }
+
+        long batches = Math.min(segments, (long) parallelism * TASKS_PER_THREAD);
+        long perBatch = (segments + batches - 1) / batches;
+        List<Future<Void>> futures = new ArrayList<>();
+        for (long start = 0; start < segments; start += perBatch) {
+            final long first = start;
+            final long last = Math.min(segments, start + perBatch);
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws ChlorideException {
+                    for (long index = first; index < last; index++) {
+                        task.process(index);
+                    }
+
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChlorideException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ChlorideException) {
+                throw (ChlorideException) e.getCause();
+            }
+
+            throw new ChlorideException(e);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private interface SegmentTask {
+        void process(long index) throws ChlorideException;
+    }
+}
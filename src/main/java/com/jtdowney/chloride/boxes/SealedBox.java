@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.Curve;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.KeyPairPool;
+import com.jtdowney.chloride.keys.PrivateKey;
+import com.jtdowney.chloride.keys.PublicKey;
+
+import javax.crypto.IllegalBlockSizeException;
+/**
+ * Box for anonymous asymmetric encryption to a recipient's public key
+ * <p>
+ * Every message is encrypted with a {@link Box} between a fresh ephemeral key pair and the recipient.
+ * The ciphertext starts with the raw ephemeral public key, so only the recipient's private key is
+ * needed to open it and the sender stays anonymous. Ephemeral key pairs can be taken from a
+ * {@link KeyPairPool} to keep key generation off the calling thread.
+ */
+public class SealedBox {
+    private final PublicKey publicKey;
+    private final PrivateKey privateKey;
+    private final KeyPairPool pool;
+
+    /**
+     * Create a box that seals messages to the given recipient
+     * @param publicKey the recipient's public key
+     */
+    public SealedBox(PublicKey publicKey) {
+        this(publicKey, null);
+    }
+
+    /**
+     * Create a box that seals messages to the given recipient using ephemeral key pairs from a pool
+     * @param publicKey the recipient's public key
+     * @param pool pool of ephemeral key pairs on the recipient's curve
+     */
+    public SealedBox(PublicKey publicKey, KeyPairPool pool) {
+        if (pool != null && pool.getCurve() != publicKey.getCurve()) {
+            throw new IllegalArgumentException("pool curve does not match the public key");
+        }
+
+        this.publicKey = publicKey;
+        this.privateKey = null;
+        this.pool = pool;
+    }
+
+    /**
+     * Create a box that opens messages sealed to the given private key
+     * @param privateKey the recipient's private key
+     */
+    public SealedBox(PrivateKey privateKey) {
+        this.publicKey = null;
+        this.privateKey = privateKey;
+        this.pool = null;
+    }
+
+    /**
+     * Encrypt the given plaintext
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        if (publicKey == null) {
+            throw new IllegalStateException("box was created for opening messages");
+        }
+
+        KeyPair ephemeral = pool != null ? pool.take() : KeyPair.generate(publicKey.getCurve());
+        byte[] ephemeralKey = ephemeral.getPublicKey().getRawBytes();
+        byte[] ciphertext = new Box(ephemeral.getPrivateKey(), publicKey).encrypt(plaintext);
+
+        byte[] result = new byte[ephemeralKey.length + ciphertext.length];
+        System.arraycopy(ephemeralKey, 0, result, 0, ephemeralKey.length);
+        System.arraycopy(ciphertext, 0, result, ephemeralKey.length, ciphertext.length);
+        return result;
+    }
+
+    /**
+     * Decrypt the given ciphertext
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        if (privateKey == null) {
+            throw new IllegalStateException("box was created for sealing messages");
+        }
+
+        Curve curve = privateKey.getCurve();
+        int keyLength = curve.getRawLength();
+        if (ciphertext.length < keyLength) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        byte[] ephemeralKey = new byte[keyLength];
+        System.arraycopy(ciphertext, 0, ephemeralKey, 0, keyLength);
+        byte[] sealed = new byte[ciphertext.length - keyLength];
+        System.arraycopy(ciphertext, keyLength, sealed, 0, sealed.length);
+
+        PublicKey ephemeral = PublicKey.fromRawBytesUncached(curve, ephemeralKey);
+        return new Box(privateKey, ephemeral).decrypt(sealed);
+    }
+}
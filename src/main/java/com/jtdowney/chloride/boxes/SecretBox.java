@@ -22,37 +22,105 @@
 
 package com.jtdowney.chloride.boxes;
 
+import com.jtdowney.chloride.Async;
 import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
 import com.jtdowney.chloride.keys.SecretKey;
 
+import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
+import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
-import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
-import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
 
 /**
  * Box for symmetric encryption
+ * <p>
+ * A secret box is safe to share between threads. Each thread lazily creates and then reuses its own
+ * {@link Cipher}, so provider lookups only happen once per thread. Nonces come from a
+ * {@link NonceStrategy}, which defaults to a per-thread random number generator. The AES-GCM
+ * implementation comes from a {@link CipherEngine}, which defaults to the JDK provider when available.
  */
 public class SecretBox {
-    private final byte[] key;
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_LENGTH = 16;
+
+    private final SecretKeySpec key;
+    private final CipherEngine engine;
+    private final NonceStrategy nonces;
 
     /**
      * Create a secret box using the provided secret key.
      * @param key secret key to encrypt with
      */
     public SecretBox(SecretKey key) {
-        this.key = key.getBytes();
+        this(key, CipherEngine.defaultEngine(), NonceStrategy.random());
+    }
+
+    /**
+     * Create a secret box using the provided secret key and nonce strategy.
+     * @param key secret key to encrypt with
+     * @param nonces strategy to generate nonces with
+     */
+    public SecretBox(SecretKey key, NonceStrategy nonces) {
+        this(key, CipherEngine.defaultEngine(), nonces);
+    }
+
+    /**
+     * Create a secret box using the provided secret key and cipher engine.
+     * @param key secret key to encrypt with
+     * @param engine provider of the AES-GCM implementation
+     */
+    public SecretBox(SecretKey key, CipherEngine engine) {
+        this(key, engine, NonceStrategy.random());
+    }
+
+    /**
+     * Create a secret box using the provided secret key, cipher engine and nonce strategy.
+     * @param key secret key to encrypt with
+     * @param engine provider of the AES-GCM implementation
+     * @param nonces strategy to generate nonces with
+     */
+    public SecretBox(SecretKey key, CipherEngine engine, NonceStrategy nonces) {
+        this.key = new SecretKeySpec(key.getBytes(), "AES");
+        this.engine = engine;
+        this.nonces = nonces;
+    }
+
+    /**
+     * Calculate the size of the ciphertext produced for a plaintext of the given length
+     * @param plaintextLength length of the plaintext
+     * @return length of the ciphertext, including the nonce and authentication tag
+     */
+    public int outputSize(int plaintextLength) {
+        return NONCE_LENGTH + plaintextLength + TAG_LENGTH;
+    }
+
+    /**
+     * Calculate the size of the plaintext contained in a ciphertext of the given length
+     * @param ciphertextLength length of the ciphertext
+     * @return length of the plaintext
+     */
+    public int plaintextSize(int ciphertextLength) {
+        return Math.max(0, ciphertextLength - NONCE_LENGTH - TAG_LENGTH);
     }
 
     /**
@@ -62,25 +130,57 @@ public class SecretBox {
      * @throws ChlorideException when an error occurs during encryption
      */
     public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        byte[] ciphertext = new byte[outputSize(plaintext.length)];
+        encrypt(plaintext, 0, plaintext.length, ciphertext, 0);
+        return ciphertext;
+    }
+
+    /**
+     * Encrypt part of an array into a caller supplied array. The output needs room for
+     * {@link #outputSize(int)} bytes and must not overlap the input.
+     * @param plaintext array holding the value to encrypt
+     * @param offset offset of the value in the plaintext array
+     * @param length length of the value
+     * @param ciphertext array to write the encrypted value to
+     * @param ciphertextOffset offset to start writing at
+     * @return the number of bytes written
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public int encrypt(byte[] plaintext, int offset, int length, byte[] ciphertext, int ciphertextOffset) throws ChlorideException {
+        try {
+            if (ciphertext.length - ciphertextOffset < outputSize(length)) {
+                throw new ShortBufferException("ciphertext buffer too short");
+            }
+
+            byte[] nonce = nextNonce();
+            System.arraycopy(nonce, 0, ciphertext, ciphertextOffset, nonce.length);
+
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, nonce, 0);
+            return nonce.length + cipher.doFinal(plaintext, offset, length, ciphertext, ciphertextOffset + nonce.length);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Encrypt the remaining bytes of a buffer into another buffer. Heap and direct buffers are both
+     * supported. The positions of both buffers are advanced past the bytes consumed and written.
+     * @param plaintext buffer holding the value to encrypt
+     * @param ciphertext buffer to write the encrypted value to
+     * @return the number of bytes written
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public int encrypt(ByteBuffer plaintext, ByteBuffer ciphertext) throws ChlorideException {
         try {
-            byte[] nonce = new byte[12];
-            SecureRandom random = SecureRandom.getInstance("NativePRNG");
-            random.nextBytes(nonce);
-
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(this.key, "AES"), new IvParameterSpec(nonce));
-            ByteArrayOutputStream output = new ByteArrayOutputStream();
-            CipherOutputStream cipherStream = new CipherOutputStream(output, cipher);
-            cipherStream.write(plaintext);
-            cipherStream.close();
-
-            byte[] ciphertext = output.toByteArray();
-            byte[] result = new byte[nonce.length + ciphertext.length];
-            System.arraycopy(nonce, 0, result, 0, nonce.length);
-            System.arraycopy(ciphertext, 0, result, nonce.length, ciphertext.length);
-
-            return result;
-        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IOException e) {
+            if (ciphertext.remaining() < outputSize(plaintext.remaining())) {
+                throw new ShortBufferException("ciphertext buffer too short");
+            }
+
+            byte[] nonce = nextNonce();
+            Cipher cipher = initCipher(Cipher.ENCRYPT_MODE, nonce, 0);
+            ciphertext.put(nonce);
+            return nonce.length + cipher.doFinal(plaintext, ciphertext);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
             throw new ChlorideException(e);
         }
     }
@@ -92,37 +192,438 @@ public class SecretBox {
      * @throws ChlorideException when an error occurs during encryption
      */
     public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        byte[] plaintext = new byte[plaintextSize(ciphertext.length)];
+        decrypt(ciphertext, 0, ciphertext.length, plaintext, 0);
+        return plaintext;
+    }
+
+    /**
+     * Decrypt part of an array into a caller supplied array. The output needs room for
+     * {@link #plaintextSize(int)} bytes and must not overlap the input.
+     * @param ciphertext array holding the value to decrypt
+     * @param offset offset of the value in the ciphertext array
+     * @param length length of the value
+     * @param plaintext array to write the decrypted value to
+     * @param plaintextOffset offset to start writing at
+     * @return the number of bytes written
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public int decrypt(byte[] ciphertext, int offset, int length, byte[] plaintext, int plaintextOffset) throws ChlorideException {
         try {
-            byte[] nonce = new byte[12];
-            System.arraycopy(ciphertext, 0, nonce, 0, nonce.length);
+            if (length < NONCE_LENGTH + TAG_LENGTH) {
+                throw new IllegalBlockSizeException("ciphertext too short");
+            }
 
-            byte[] input = new byte[ciphertext.length - nonce.length];
-            System.arraycopy(ciphertext, nonce.length, input, 0, input.length);
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, ciphertext, offset);
+            return cipher.doFinal(ciphertext, offset + NONCE_LENGTH, length - NONCE_LENGTH, plaintext, plaintextOffset);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
 
-            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "BC");
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(this.key, "AES"), new IvParameterSpec(nonce));
-            ByteArrayInputStream inputStream = new ByteArrayInputStream(input);
-            CipherInputStream cipherStream = new CipherInputStream(inputStream, cipher);
+    /**
+     * Decrypt the remaining bytes of a buffer into another buffer. Heap and direct buffers are both
+     * supported. The positions of both buffers are advanced past the bytes consumed and written.
+     * @param ciphertext buffer holding the value to decrypt
+     * @param plaintext buffer to write the decrypted value to
+     * @return the number of bytes written
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public int decrypt(ByteBuffer ciphertext, ByteBuffer plaintext) throws ChlorideException {
+        try {
+            if (ciphertext.remaining() < NONCE_LENGTH + TAG_LENGTH) {
+                throw new IllegalBlockSizeException("ciphertext too short");
+            }
 
-            return readOutput(cipherStream);
-        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IOException e) {
+            byte[] nonce = new byte[NONCE_LENGTH];
+            ciphertext.get(nonce);
+            Cipher cipher = initCipher(Cipher.DECRYPT_MODE, nonce, 0);
+            return cipher.doFinal(ciphertext, plaintext);
+        } catch (NoSuchAlgorithmException | InvalidKeyException | InvalidAlgorithmParameterException | NoSuchPaddingException | NoSuchProviderException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
             throw new ChlorideException(e);
         }
     }
 
-    private byte[] readOutput(InputStream inputStream) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
+    /**
+     * Encrypt the given plaintext asynchronously. Plaintexts of at most {@link Async#INLINE_THRESHOLD} bytes are
+     * encrypted on the calling thread.
+     * @param plaintext value to encrypt
+     * @return a future for the encrypted value
+     * @see #encrypt(byte[])
+     */
+    public CompletableFuture<byte[]> encryptAsync(byte[] plaintext) {
+        return encryptAsync(plaintext, Async.defaultExecutor());
+    }
+
+    /**
+     * Encrypt the given plaintext asynchronously on the given executor. Plaintexts of at most
+     * {@link Async#INLINE_THRESHOLD} bytes are encrypted on the calling thread.
+     * @param plaintext value to encrypt
+     * @param executor the executor to run larger operations on
+     * @return a future for the encrypted value
+     * @see #encrypt(byte[])
+     */
+    public CompletableFuture<byte[]> encryptAsync(final byte[] plaintext, Executor executor) {
+        return AsyncTasks.supply(() -> encrypt(plaintext), plaintext.length <= Async.INLINE_THRESHOLD, executor);
+    }
+
+    /**
+     * Decrypt the given ciphertext asynchronously. Ciphertexts of at most {@link Async#INLINE_THRESHOLD} bytes are
+     * decrypted on the calling thread.
+     * @param ciphertext value to decrypt
+     * @return a future for the decrypted value
+     * @see #decrypt(byte[])
+     */
+    public CompletableFuture<byte[]> decryptAsync(byte[] ciphertext) {
+        return decryptAsync(ciphertext, Async.defaultExecutor());
+    }
+
+    /**
+     * Decrypt the given ciphertext asynchronously on the given executor. Ciphertexts of at most
+     * {@link Async#INLINE_THRESHOLD} bytes are decrypted on the calling thread.
+     * @param ciphertext value to decrypt
+     * @param executor the executor to run larger operations on
+     * @return a future for the decrypted value
+     * @see #decrypt(byte[])
+     */
+    public CompletableFuture<byte[]> decryptAsync(final byte[] ciphertext, Executor executor) {
+        return AsyncTasks.supply(() -> decrypt(ciphertext), ciphertext.length <= Async.INLINE_THRESHOLD, executor);
+    }
+
+    /**
+     * Encrypt a batch of plaintexts. The batch shares one cipher and draws the nonces for every record
+     * from the nonce strategy at once.
+     * @param plaintexts values to encrypt
+     * @return the encrypted values, or the error for each record that failed
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public BatchResult encryptAll(List<byte[]> plaintexts) throws ChlorideException {
+        BatchResult result = new BatchResult(plaintexts.size());
+        byte[] nonces = new byte[NONCE_LENGTH * plaintexts.size()];
+        this.nonces.next(nonces, 0, plaintexts.size());
+
+        Cipher cipher = cipher();
+        for (int i = 0; i < plaintexts.size(); i++) {
+            try {
+                byte[] plaintext = plaintexts.get(i);
+                byte[] ciphertext = new byte[outputSize(plaintext.length)];
+                System.arraycopy(nonces, i * NONCE_LENGTH, ciphertext, 0, NONCE_LENGTH);
+                cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH * 8, nonces, i * NONCE_LENGTH, NONCE_LENGTH));
+                cipher.doFinal(plaintext, 0, plaintext.length, ciphertext, NONCE_LENGTH);
+                result.succeed(i, ciphertext);
+            } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+                result.fail(i, new ChlorideException(e));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Decrypt a batch of ciphertexts. A record that fails to decrypt does not affect the rest of the
+     * batch.
+     * @param ciphertexts values to decrypt
+     * @return the decrypted values, or the error for each record that failed
+     * @throws ChlorideException when an error occurs setting up decryption
+     */
+    public BatchResult decryptAll(List<byte[]> ciphertexts) throws ChlorideException {
+        BatchResult result = new BatchResult(ciphertexts.size());
+        Cipher cipher = cipher();
+        for (int i = 0; i < ciphertexts.size(); i++) {
+            try {
+                byte[] ciphertext = ciphertexts.get(i);
+                if (ciphertext.length < NONCE_LENGTH + TAG_LENGTH) {
+                    throw new IllegalBlockSizeException("ciphertext too short");
+                }
 
-        while (true) {
-            int length = inputStream.read(buffer);
-            if (length == -1) {
-                break;
+                cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH * 8, ciphertext, 0, NONCE_LENGTH));
+                result.succeed(i, cipher.doFinal(ciphertext, NONCE_LENGTH, ciphertext.length - NONCE_LENGTH));
+            } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+                result.fail(i, new ChlorideException(e));
             }
+        }
+
+        return result;
+    }
+
+    /**
+     * Wrap an output stream so everything written to it is encrypted in segments of 64 KiB. Unlike
+     * {@link #encrypt(byte[])} the payload never has to fit in memory. The stream must be closed to
+     * write the final segment.
+     * @param output stream to write the encrypted value to
+     * @return a stream accepting the plaintext
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public OutputStream encryptingOutputStream(OutputStream output) throws ChlorideException {
+        return encryptingOutputStream(output, SecretStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Wrap an output stream so everything written to it is encrypted in segments of the given size.
+     * The stream must be closed to write the final segment.
+     * @param output stream to write the encrypted value to
+     * @param segmentSize the plaintext size of each segment, at most 16 MiB
+     * @return a stream accepting the plaintext
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public OutputStream encryptingOutputStream(OutputStream output, int segmentSize) throws ChlorideException {
+        try {
+            SecretStream stream = newStream(segmentSize);
+            return new SecretStreamOutputStream(stream, newCipher(), output);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
 
-            outputStream.write(buffer, 0, length);
+    /**
+     * Wrap an input stream holding a value written by {@link #encryptingOutputStream(OutputStream)}.
+     * Reads fail with an {@link java.io.IOException} caused by a {@link ChlorideException} when a
+     * segment fails authentication or the stream is truncated.
+     * @param input stream to read the encrypted value from
+     * @return a stream of the decrypted value
+     * @throws ChlorideException when an error occurs setting up decryption
+     */
+    public InputStream decryptingInputStream(InputStream input) throws ChlorideException {
+        try {
+            return new SecretStreamInputStream(this.key, newCipher(), input);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
         }
+    }
+
+    /**
+     * Wrap a channel so everything written to it is encrypted into the same format as
+     * {@link #encryptingOutputStream(OutputStream)}. The channel must be finished or closed to write the
+     * final segment.
+     * @param channel channel to write the encrypted value to
+     * @return a channel accepting the plaintext
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public EncryptingWritableByteChannel encryptingChannel(WritableByteChannel channel) throws ChlorideException {
+        return encryptingChannel(channel, SecretStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Wrap a channel so everything written to it is encrypted in segments of the given size. Non-blocking
+     * channels are supported; a write consumes only as much plaintext as the channel can take, and
+     * {@link EncryptingWritableByteChannel#finish()} writes the final segment without blocking.
+     * @param channel channel to write the encrypted value to
+     * @param segmentSize the plaintext size of each segment, at most 16 MiB
+     * @return a channel accepting the plaintext
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public EncryptingWritableByteChannel encryptingChannel(WritableByteChannel channel, int segmentSize) throws ChlorideException {
+        try {
+            return new EncryptingWritableByteChannel(newStream(segmentSize), newCipher(), channel);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Wrap a channel holding a value written by {@link #encryptingChannel(WritableByteChannel)} or
+     * {@link #encryptingOutputStream(OutputStream)}. Reads fail with an {@link java.io.IOException} caused
+     * by a {@link ChlorideException} when a segment fails authentication or the stream is truncated.
+     * @param channel channel to read the encrypted value from
+     * @return a channel of the decrypted value
+     * @throws ChlorideException when an error occurs setting up decryption
+     */
+    public ReadableByteChannel decryptingChannel(ReadableByteChannel channel) throws ChlorideException {
+        try {
+            return new DecryptingReadableByteChannel(this, newCipher(), channel);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Open a read only view of the plaintext held in a channel written by
+     * {@link #encryptingChannel(WritableByteChannel)} or {@link #encryptingOutputStream(OutputStream)}.
+     * Positions and sizes are in plaintext bytes, and each read only decrypts and authenticates the
+     * segments it touches. The final segment is authenticated when the channel is opened, so the size is
+     * known to be genuine. Reads fail with an {@link java.io.IOException} caused by a
+     * {@link ChlorideException} when a segment fails authentication.
+     * @param channel channel holding the encrypted value
+     * @return a seekable channel of the decrypted value
+     * @throws ChlorideException when the header cannot be read, the ciphertext length is invalid or the
+     * final segment fails authentication
+     */
+    public DecryptingSeekableByteChannel decryptingSeekableChannel(SeekableByteChannel channel) throws ChlorideException {
+        return new DecryptingSeekableByteChannel(newReader(channel), channel);
+    }
+
+    /**
+     * Decrypt a range of the plaintext held in a channel written in the stream format. Only the segments
+     * covering the range and the final segment are read and authenticated. Every call reads the header
+     * and authenticates the final segment again; to read many ranges of one channel, open it once with
+     * {@link #decryptingSeekableChannel(SeekableByteChannel)} and use
+     * {@link DecryptingSeekableByteChannel#decryptRange(long, int)}.
+     * @param channel channel holding the encrypted value
+     * @param offset offset of the range in the plaintext
+     * @param length length of the range
+     * @return the decrypted range
+     * @throws ChlorideException when an error occurs during decryption, the ciphertext is truncated or the
+     * range extends past the end of the plaintext
+     * @throws IllegalArgumentException when the offset or length is negative
+     */
+    public byte[] decryptRange(SeekableByteChannel channel, long offset, int length) throws ChlorideException {
+        return newReader(channel).readRange(offset, length);
+    }
+
+    /**
+     * Decrypt a range of the plaintext held in a byte array written in the stream format. Only the
+     * segments covering the range and the final segment are authenticated and decrypted.
+     * @param ciphertext the encrypted value
+     * @param offset offset of the range in the plaintext
+     * @param length length of the range
+     * @return the decrypted range
+     * @throws ChlorideException when an error occurs during decryption, the ciphertext is truncated or the
+     * range extends past the end of the plaintext
+     * @throws IllegalArgumentException when the offset or length is negative
+     */
+    public byte[] decryptRange(byte[] ciphertext, long offset, int length) throws ChlorideException {
+        return SecretStreamReader.decryptRange(this, cipher(), ciphertext, offset, length);
+    }
+
+    /**
+     * Create a processor that encrypts the buffers published to it into the same format as
+     * {@link #encryptingOutputStream(OutputStream)}. Each buffer it publishes holds one segment.
+     * @return an encrypting processor
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public Flow.Processor<ByteBuffer, ByteBuffer> encryptingProcessor() throws ChlorideException {
+        return encryptingProcessor(SecretStream.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create a processor that encrypts the buffers published to it in segments of the given size. It
+     * only requests more input while its subscriber has outstanding demand.
+     * @param segmentSize the plaintext size of each segment, at most 16 MiB
+     * @return an encrypting processor
+     * @throws ChlorideException when an error occurs setting up encryption
+     */
+    public Flow.Processor<ByteBuffer, ByteBuffer> encryptingProcessor(int segmentSize) throws ChlorideException {
+        try {
+            return new SecretStreamProcessor.Encrypting(newStream(segmentSize), newCipher());
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Create a processor that decrypts buffers holding a value written by {@link #encryptingProcessor()}
+     * or {@link #encryptingOutputStream(OutputStream)}. The subscriber receives a {@link ChlorideException}
+     * error when a segment fails authentication or the stream is truncated.
+     * @return a decrypting processor
+     * @throws ChlorideException when an error occurs setting up decryption
+     */
+    public Flow.Processor<ByteBuffer, ByteBuffer> decryptingProcessor() throws ChlorideException {
+        try {
+            return new SecretStreamProcessor.Decrypting(this, newCipher());
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Encrypt a file into the same format as {@link #encryptingOutputStream(OutputStream)}. The file is
+     * processed through memory mapped regions, so it never has to fit in memory and may be larger than
+     * 2 GiB. The destination is replaced atomically once encryption succeeds.
+     * @param source file to encrypt
+     * @param destination file to write the encrypted value to
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public void encryptFile(Path source, Path destination) throws ChlorideException {
+        encryptFile(source, destination, null);
+    }
+
+    /**
+     * Encrypt a file, reporting progress to the given listener
+     * @param source file to encrypt
+     * @param destination file to write the encrypted value to
+     * @param listener listener to report progress to, may be null
+     * @throws ChlorideException when an error occurs during encryption
+     * @see #encryptFile(Path, Path)
+     */
+    public void encryptFile(Path source, Path destination, ProgressListener listener) throws ChlorideException {
+        SecretFiles.encrypt(this, source, destination, listener);
+    }
+
+    /**
+     * Decrypt a file written by {@link #encryptFile(Path, Path)} or
+     * {@link #encryptingOutputStream(OutputStream)}. The destination is replaced atomically once every
+     * segment has been authenticated and is left untouched on failure.
+     * @param source file to decrypt
+     * @param destination file to write the decrypted value to
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public void decryptFile(Path source, Path destination) throws ChlorideException {
+        decryptFile(source, destination, null);
+    }
+
+    /**
+     * Decrypt a file, reporting progress to the given listener
+     * @param source file to decrypt
+     * @param destination file to write the decrypted value to
+     * @param listener listener to report progress to, may be null
+     * @throws ChlorideException when an error occurs during decryption
+     * @see #decryptFile(Path, Path)
+     */
+    public void decryptFile(Path source, Path destination, ProgressListener listener) throws ChlorideException {
+        SecretFiles.decrypt(this, source, destination, listener);
+    }
+
+    SecretStream newStream(int segmentSize) throws ChlorideException {
+        try {
+            return SecretStream.create(this.key, segmentSize, Randoms.get());
+        } catch (NoSuchAlgorithmException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    SecretStream openStream(byte[] header) throws ChlorideException {
+        return SecretStream.open(this.key, header);
+    }
+
+    Cipher cipher() throws ChlorideException {
+        try {
+            return this.engine.cipher();
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    private SecretStreamReader newReader(SeekableByteChannel channel) throws ChlorideException {
+        try {
+            return new SecretStreamReader(this, newCipher(), channel);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | NoSuchProviderException e) {
+            throw new ChlorideException(e);
+        } catch (IOException e) {
+            throw unwrap(e);
+        }
+    }
+
+    static ChlorideException unwrap(IOException e) {
+        if (e.getCause() instanceof ChlorideException) {
+            return (ChlorideException) e.getCause();
+        }
+
+        return new ChlorideException(e);
+    }
+
+    private byte[] nextNonce() throws ChlorideException {
+        byte[] nonce = new byte[NONCE_LENGTH];
+        this.nonces.next(nonce, 0, 1);
+        return nonce;
+    }
+
+    private Cipher newCipher() throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+        return this.engine.newCipher();
+    }
 
-        return outputStream.toByteArray();
+    private Cipher initCipher(int mode, byte[] nonce, int nonceOffset) throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException, InvalidKeyException, InvalidAlgorithmParameterException {
+        Cipher cipher = this.engine.cipher();
+        cipher.init(mode, this.key, new GCMParameterSpec(TAG_LENGTH * 8, nonce, nonceOffset, NONCE_LENGTH));
+        return cipher;
     }
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File encryption in the {@link SecretStream} format using memory mapped regions. Output is written to
+ * a temporary file next to the destination which is renamed into place once every segment has been
+ * processed, so a failed operation never leaves a partial destination behind.
+ */
+final class SecretFiles {
+    private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private SecretFiles() {
+    }
+
+    static void encrypt(SecretBox box, Path source, Path destination, ProgressListener listener) throws ChlorideException {
+        Path temporary = null;
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            SecretStream stream = box.newStream(SecretStream.DEFAULT_SEGMENT_SIZE);
+            int segmentSize = stream.getSegmentSize();
+            long plaintextSize = input.size();
+            long segments = SecretStream.segmentCount(plaintextSize, segmentSize);
+            Cipher cipher = box.cipher();
+
+            temporary = createTemporary(destination);
+            try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                output.write(ByteBuffer.wrap(stream.getHeader()), 0);
+
+                long segmentsPerWindow = Math.max(1, WINDOW_SIZE / (segmentSize + SecretStream.TAG_LENGTH));
+                for (long first = 0; first < segments; first += segmentsPerWindow) {
+                    long last = Math.min(segments, first + segmentsPerWindow);
+                    long inputOffset = first * segmentSize;
+                    long inputLength = Math.min(plaintextSize, last * segmentSize) - inputOffset;
+                    long outputOffset = SecretStream.HEADER_LENGTH + first * (segmentSize + SecretStream.TAG_LENGTH);
+                    long outputLength = inputLength + (last - first) * SecretStream.TAG_LENGTH;
+
+                    MappedByteBuffer in = input.map(FileChannel.MapMode.READ_ONLY, inputOffset, inputLength);
+                    MappedByteBuffer out = output.map(FileChannel.MapMode.READ_WRITE, outputOffset, outputLength);
+                    for (long index = first; index < last; index++) {
+                        in.limit((int) Math.min(inputLength, in.position() + segmentSize));
+                        stream.encryptSegment(cipher, index, index == segments - 1, in, out);
+                    }
+
+                    out.force();
+                    if (listener != null) {
+                        listener.progress(inputOffset + inputLength, plaintextSize);
+                    }
+                }
+            }
+
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            throw new ChlorideException(e);
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    static void decrypt(SecretBox box, Path source, Path destination, ProgressListener listener) throws ChlorideException {
+        Path temporary = null;
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ)) {
+            long ciphertextSize = input.size();
+            ByteBuffer header = ByteBuffer.allocate(SecretStream.HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (input.read(header, header.position()) == -1) {
+                    throw new EOFException("truncated stream header");
+                }
+            }
+
+            SecretStream stream = box.openStream(header.array());
+            int segmentSize = stream.getSegmentSize();
+            long plaintextSize = stream.plaintextSize(ciphertextSize);
+            long segments = SecretStream.segmentCount(plaintextSize, segmentSize);
+            Cipher cipher = box.cipher();
+
+            temporary = createTemporary(destination);
+            try (FileChannel output = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long segmentsPerWindow = Math.max(1, WINDOW_SIZE / (segmentSize + SecretStream.TAG_LENGTH));
+                for (long first = 0; first < segments; first += segmentsPerWindow) {
+                    long last = Math.min(segments, first + segmentsPerWindow);
+                    long inputOffset = SecretStream.HEADER_LENGTH + first * (segmentSize + SecretStream.TAG_LENGTH);
+                    long inputLength = Math.min(ciphertextSize, SecretStream.HEADER_LENGTH + last * (segmentSize + SecretStream.TAG_LENGTH)) - inputOffset;
+                    long outputOffset = first * segmentSize;
+                    long outputLength = inputLength - (last - first) * SecretStream.TAG_LENGTH;
+
+                    MappedByteBuffer in = input.map(FileChannel.MapMode.READ_ONLY, inputOffset, inputLength);
+                    MappedByteBuffer out = output.map(FileChannel.MapMode.READ_WRITE, outputOffset, outputLength);
+                    for (long index = first; index < last; index++) {
+                        in.limit((int) Math.min(inputLength, in.position() + segmentSize + SecretStream.TAG_LENGTH));
+                        stream.decryptSegment(cipher, index, index == segments - 1, in, out);
+                    }
+
+                    out.force();
+                    if (listener != null) {
+                        listener.progress(inputOffset + inputLength, ciphertextSize);
+                    }
+                }
+            }
+
+            Files.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+        } catch (IOException e) {
+            throw new ChlorideException(e);
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    private static Path createTemporary(Path destination) throws IOException {
+        Path directory = destination.toAbsolutePath().getParent();
+        return Files.createTempFile(directory, "." + destination.getFileName(), ".tmp");
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            // the original error is more useful to the caller
+        }
+    }
+}
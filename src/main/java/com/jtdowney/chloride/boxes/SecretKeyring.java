@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.SecretKey;
+
+import javax.crypto.IllegalBlockSizeException;
+import java.nio.ByteBuffer;
+import java.security.InvalidKeyException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Set of secret keys for encrypting with one primary key while still decrypting under older keys
+ * <p>
+ * Each ciphertext starts with the 4 byte identifier of the key it was encrypted with, so decryption
+ * looks the key up directly instead of trying every key. Keys can be added, promoted and retired
+ * from any thread while other threads encrypt and decrypt, without locking. Each key keeps its own
+ * {@link SecretBox}, so a message only costs a map lookup; the boxes share their engine's per-thread
+ * cipher.
+ */
+public class SecretKeyring {
+    private static final int KEY_ID_LENGTH = 4;
+
+    private final ConcurrentMap<Integer, SecretBox> boxes = new ConcurrentHashMap<>();
+    private final AtomicReference<Primary> primary = new AtomicReference<>();
+
+    /**
+     * Add a key that can be used for decryption
+     * @param id the key identifier
+     * @param key the key
+     * @throws IllegalArgumentException when a key with the same identifier is already present
+     */
+    public void add(int id, SecretKey key) {
+        if (boxes.putIfAbsent(id, new SecretBox(key)) != null) {
+            throw new IllegalArgumentException("duplicate key id " + id);
+        }
+    }
+
+    /**
+     * Use the given key for all future encryption
+     * @param id the key identifier
+     * @throws IllegalArgumentException when no key with the identifier is present
+     */
+    public void setPrimary(int id) {
+        SecretBox box = boxes.get(id);
+        if (box == null) {
+            throw new IllegalArgumentException("unknown key id " + id);
+        }
+
+        Primary next = new Primary(id, box);
+        Primary previous = primary.getAndSet(next);
+
+        // A concurrent retire may have removed the key before it became primary
+        if (boxes.get(id) != box) {
+            primary.compareAndSet(next, previous);
+            throw new IllegalArgumentException("unknown key id " + id);
+        }
+    }
+
+    /**
+     * Remove a key so that ciphertexts encrypted with it can no longer be decrypted
+     * @param id the key identifier
+     * @throws IllegalStateException when the key is the primary key
+     */
+    public void retire(int id) {
+        if (isPrimary(id)) {
+            throw new IllegalStateException("cannot retire the primary key");
+        }
+
+        SecretBox removed = boxes.remove(id);
+
+        // A concurrent setPrimary may have promoted the key before it was removed
+        if (removed != null && isPrimary(id)) {
+            boxes.putIfAbsent(id, removed);
+            throw new IllegalStateException("cannot retire the primary key");
+        }
+    }
+
+    /**
+     * Check whether a key can be used for decryption
+     * @param id the key identifier
+     * @return true if a key with the identifier is present
+     */
+    public boolean contains(int id) {
+        return boxes.containsKey(id);
+    }
+
+    /**
+     * Retrieve the identifier of the key used for encryption
+     * @return the identifier of the primary key
+     * @throws IllegalStateException when no primary key has been set
+     */
+    public int getPrimaryId() {
+        return primary().id;
+    }
+
+    /**
+     * Encrypt the given plaintext with the primary key
+     * @param plaintext value to encrypt
+     * @return the key identifier followed by the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     * @throws IllegalStateException when no primary key has been set
+     */
+    public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        Primary current = primary();
+        byte[] result = new byte[KEY_ID_LENGTH + current.box.outputSize(plaintext.length)];
+        ByteBuffer.wrap(result).putInt(current.id);
+        current.box.encrypt(plaintext, 0, plaintext.length, result, KEY_ID_LENGTH);
+        return result;
+    }
+
+    /**
+     * Decrypt the given ciphertext with the key it was encrypted with
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption or the key is not present
+     */
+    public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        if (ciphertext.length < KEY_ID_LENGTH) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        int id = ByteBuffer.wrap(ciphertext).getInt();
+        SecretBox box = boxes.get(id);
+        if (box == null) {
+            throw new ChlorideException(new InvalidKeyException("unknown key id " + id));
+        }
+
+        int length = ciphertext.length - KEY_ID_LENGTH;
+        byte[] plaintext = new byte[box.plaintextSize(length)];
+        box.decrypt(ciphertext, KEY_ID_LENGTH, length, plaintext, 0);
+        return plaintext;
+    }
+
+    private boolean isPrimary(int id) {
+        Primary current = primary.get();
+        return current != null && current.id == id;
+    }
+
+    private Primary primary() {
+        Primary current = primary.get();
+        if (current == null) {
+            throw new IllegalStateException("no primary key");
+        }
+
+        return current;
+    }
+
+    private static final class Primary {
+        private final int id;
+        private final SecretBox box;
+
+        private Primary(int id, SecretBox box) {
+            this.id = id;
+            this.box = box;
+        }
+    }
+}
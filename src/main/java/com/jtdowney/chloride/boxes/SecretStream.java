@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Segmented format shared by the streaming secret box APIs.
+ * <p>
+ * A stream starts with a header holding the segment size, a random salt and a random nonce prefix. The
+ * stream key is HMAC-SHA256 of the header under the box key, so each stream has its own key and a
+ * modified header fails authentication. The plaintext is split into segments of the segment size, with
+ * only the final segment allowed to be shorter (or empty). Each segment is sealed with AES-GCM using
+ * the nonce prefix, the big endian segment index and a final segment flag as the nonce, which detects
+ * reordered, dropped and truncated segments.
+ */
+final class SecretStream {
+    static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+    static final int MAX_SEGMENT_SIZE = 16 * 1024 * 1024;
+    static final int HEADER_LENGTH = 4 + 16 + 7;
+    static final int TAG_LENGTH = 16;
+
+    private static final int SALT_LENGTH = 16;
+    private static final int PREFIX_LENGTH = 7;
+    private static final long MAX_SEGMENTS = 1L << 32;
+
+    private final SecretKeySpec key;
+    private final byte[] header;
+    private final int segmentSize;
+
+    private SecretStream(SecretKeySpec masterKey, byte[] header, int segmentSize) throws ChlorideException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(masterKey);
+            this.key = new SecretKeySpec(mac.doFinal(header), "AES");
+            this.header = header;
+            this.segmentSize = segmentSize;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Start a new stream with a fresh header
+     */
+    static SecretStream create(SecretKeySpec masterKey, int segmentSize, SecureRandom random) throws ChlorideException {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("segmentSize must be between 1 and " + MAX_SEGMENT_SIZE);
+        }
+
+        byte[] header = new byte[HEADER_LENGTH];
+        byte[] randomBytes = new byte[SALT_LENGTH + PREFIX_LENGTH];
+        random.nextBytes(randomBytes);
+        ByteBuffer.wrap(header).putInt(segmentSize).put(randomBytes);
+        return new SecretStream(masterKey, header, segmentSize);
+    }
+
+    /**
+     * Resume a stream from a header read off the wire
+     */
+    static SecretStream open(SecretKeySpec masterKey, byte[] header) throws ChlorideException {
+        int segmentSize = ByteBuffer.wrap(header).getInt();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new ChlorideException(new IllegalBlockSizeException("invalid segment size in stream header"));
+        }
+
+        return new SecretStream(masterKey, header.clone(), segmentSize);
+    }
+
+    /**
+     * Calculate the size of the complete ciphertext for a plaintext of the given length
+     */
+    static long ciphertextSize(long plaintextLength, int segmentSize) {
+        return HEADER_LENGTH + plaintextLength + segmentCount(plaintextLength, segmentSize) * TAG_LENGTH;
+    }
+
+    /**
+     * Calculate the number of segments needed for a plaintext of the given length
+     */
+    static long segmentCount(long plaintextLength, int segmentSize) {
+        return Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+    }
+
+    byte[] getHeader() {
+        return header.clone();
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Calculate the size of the plaintext held in a complete ciphertext of the given length
+     */
+    long plaintextSize(long ciphertextLength) throws ChlorideException {
+        long body = ciphertextLength - HEADER_LENGTH;
+        long sealedSegmentSize = segmentSize + TAG_LENGTH;
+        long segments = Math.max(1, (body + sealedSegmentSize - 1) / sealedSegmentSize);
+        long plaintextLength = body - segments * TAG_LENGTH;
+        if (plaintextLength < 0 || (segments > 1 && plaintextLength <= (segments - 1) * segmentSize)) {
+            throw new ChlorideException(new IllegalBlockSizeException("invalid ciphertext length"));
+        }
+
+        return plaintextLength;
+    }
+
+    int encryptSegment(Cipher cipher, long index, boolean last, byte[] input, int offset, int length, byte[] output, int outputOffset) throws ChlorideException {
+        try {
+            initCipher(cipher, Cipher.ENCRYPT_MODE, index, last);
+            return cipher.doFinal(input, offset, length, output, outputOffset);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    int decryptSegment(Cipher cipher, long index, boolean last, byte[] input, int offset, int length, byte[] output, int outputOffset) throws ChlorideException {
+        try {
+            if (length < TAG_LENGTH) {
+                throw new IllegalBlockSizeException("segment too short");
+            }
+
+            initCipher(cipher, Cipher.DECRYPT_MODE, index, last);
+            return cipher.doFinal(input, offset, length, output, outputOffset);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    int encryptSegment(Cipher cipher, long index, boolean last, ByteBuffer input, ByteBuffer output) throws ChlorideException {
+        try {
+            initCipher(cipher, Cipher.ENCRYPT_MODE, index, last);
+            return cipher.doFinal(input, output);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    int decryptSegment(Cipher cipher, long index, boolean last, ByteBuffer input, ByteBuffer output) throws ChlorideException {
+        try {
+            if (input.remaining() < TAG_LENGTH) {
+                throw new IllegalBlockSizeException("segment too short");
+            }
+
+            initCipher(cipher, Cipher.DECRYPT_MODE, index, last);
+            return cipher.doFinal(input, output);
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    private void initCipher(Cipher cipher, int mode, long index, boolean last) throws InvalidKeyException, InvalidAlgorithmParameterException {
+        if (index < 0 || index >= MAX_SEGMENTS) {
+            throw new IllegalStateException("too many segments in stream");
+        }
+
+        byte[] nonce = new byte[12];
+        System.arraycopy(header, 4 + SALT_LENGTH, nonce, 0, PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that decrypts the {@link SecretStream} format. Each segment is authenticated before any
+ * of its plaintext is returned, and a stream that ends without a final segment is rejected.
+ */
+class SecretStreamInputStream extends InputStream {
+    private final SecretKeySpec key;
+    private final Cipher cipher;
+    private final InputStream input;
+    private SecretStream stream;
+    private byte[] sealed;
+    private byte[] buffer;
+    private int sealedLength;
+    private int position;
+    private int limit;
+    private long index;
+    private boolean finished;
+
+    SecretStreamInputStream(SecretKeySpec key, Cipher cipher, InputStream input) {
+        this.key = key;
+        this.cipher = cipher;
+        this.input = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int length = read(b, 0, 1);
+        return length == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == limit) {
+            if (finished) {
+                return -1;
+            }
+
+            readSegment();
+        }
+
+        int count = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private void readSegment() throws IOException {
+        try {
+            if (stream == null) {
+                byte[] header = new byte[SecretStream.HEADER_LENGTH];
+                if (fill(header, 0, header.length) != header.length) {
+                    throw new EOFException("truncated stream header");
+                }
+
+                stream = SecretStream.open(key, header);
+                buffer = new byte[stream.getSegmentSize()];
+                sealed = new byte[stream.getSegmentSize() + SecretStream.TAG_LENGTH + 1];
+            }
+
+            // Read one byte past the segment to learn whether this is the final segment
+            sealedLength += fill(sealed, sealedLength, sealed.length - sealedLength);
+            boolean last = sealedLength < sealed.length;
+            int length = last ? sealedLength : sealed.length - 1;
+
+            limit = stream.decryptSegment(cipher, index++, last, sealed, 0, length, buffer, 0);
+            position = 0;
+            finished = last;
+
+            if (last) {
+                sealedLength = 0;
+            } else {
+                sealed[0] = sealed[sealed.length - 1];
+                sealedLength = 1;
+            }
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private int fill(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int count = input.read(b, off + total, len - total);
+            if (count == -1) {
+                break;
+            }
+
+            total += count;
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that encrypts into the {@link SecretStream} format. Memory use is bounded by the segment
+ * size. The final segment is written when the stream is closed, so failing to close the stream leaves a
+ * ciphertext that will not decrypt.
+ */
+class SecretStreamOutputStream extends OutputStream {
+    private final SecretStream stream;
+    private final Cipher cipher;
+    private final OutputStream output;
+    private final byte[] buffer;
+    private final byte[] sealed;
+    private int position;
+    private long index;
+    private boolean headerWritten;
+    private boolean closed;
+
+    SecretStreamOutputStream(SecretStream stream, Cipher cipher, OutputStream output) {
+        this.stream = stream;
+        this.cipher = cipher;
+        this.output = output;
+        this.buffer = new byte[stream.getSegmentSize()];
+        this.sealed = new byte[stream.getSegmentSize() + SecretStream.TAG_LENGTH];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("stream closed");
+        }
+
+        while (len > 0) {
+            if (position == buffer.length) {
+                writeSegment(false);
+            }
+
+            int count = Math.min(len, buffer.length - position);
+            System.arraycopy(b, off, buffer, position, count);
+            position += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        try {
+            writeSegment(true);
+        } finally {
+            closed = true;
+            output.close();
+        }
+    }
+
+    private void writeSegment(boolean last) throws IOException {
+        try {
+            if (!headerWritten) {
+                output.write(stream.getHeader());
+                headerWritten = true;
+            }
+
+            int length = stream.encryptSegment(cipher, index++, last, buffer, 0, position, sealed, 0);
+            output.write(sealed, 0, length);
+            position = 0;
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processor that encrypts or decrypts the {@link SecretStream} format as buffers flow through it
+ * <p>
+ * One buffer is requested from upstream at a time and only while the subscriber has outstanding demand,
+ * so memory use is bounded by one segment plus the buffer being consumed. Each emitted buffer holds one
+ * segment; the encrypting side prepends the stream header to the first one. All work happens in a drain
+ * loop that runs on whichever thread signalled last, and only one thread runs it at a time. A single
+ * subscriber is supported.
+ */
+abstract class SecretStreamProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final Queue<ByteBuffer> inputs = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Flow.Subscriber<? super ByteBuffer>> subscriber = new AtomicReference<>();
+    private volatile Flow.Subscription upstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+    private ByteBuffer current;
+    private volatile boolean done;
+    private boolean requested;
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!this.subscriber.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("only one subscriber is supported"));
+            return;
+        }
+
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    error = new IllegalArgumentException("non-positive request");
+                } else {
+                    long current;
+                    long next;
+                    do {
+                        current = demand.get();
+                        next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                    } while (!demand.compareAndSet(current, next));
+                }
+
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+
+        upstream = subscription;
+        if (done) {
+            subscription.cancel();
+        } else {
+            drain();
+        }
+    }
+
+    @Override
+    public void onNext(ByteBuffer item) {
+        inputs.offer(item);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Consume input until a segment is ready
+     * @param input the buffer to consume from, may be null
+     * @param end true once all input has been consumed
+     * @return the next segment to emit, or null when more input is needed
+     * @throws ChlorideException when a segment fails to encrypt or decrypt
+     */
+    abstract ByteBuffer process(ByteBuffer input, boolean end) throws ChlorideException;
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            drainLoop();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop() {
+        if (done) {
+            return;
+        }
+
+        Flow.Subscriber<? super ByteBuffer> downstream = subscriber.get();
+        Flow.Subscription source = upstream;
+        if (cancelled) {
+            terminate(source, true);
+            return;
+        }
+
+        if (downstream == null || source == null) {
+            return;
+        }
+
+        Throwable failure = error;
+        if (failure != null) {
+            terminate(source, true);
+            downstream.onError(failure);
+            return;
+        }
+
+        try {
+            while (demand.get() > 0) {
+                if (current == null || !current.hasRemaining()) {
+                    current = inputs.poll();
+                    if (current != null) {
+                        requested = false;
+                    }
+                }
+
+                boolean end = upstreamDone && current == null && inputs.isEmpty();
+                ByteBuffer output = process(current, end);
+                if (output == null) {
+                    if (!requested && !upstreamDone) {
+                        requested = true;
+                        source.request(1);
+                    }
+
+                    return;
+                }
+
+                demand.decrementAndGet();
+                downstream.onNext(output);
+                if (end) {
+                    terminate(source, false);
+                    downstream.onComplete();
+                    return;
+                }
+            }
+        } catch (ChlorideException e) {
+            terminate(source, true);
+            downstream.onError(e);
+        }
+    }
+
+    private void terminate(Flow.Subscription source, boolean cancelUpstream) {
+        done = true;
+        current = null;
+        inputs.clear();
+        if (cancelUpstream && source != null) {
+            source.cancel();
+        }
+    }
+
+    /**
+     * Encrypting side of the processor
+     */
+    static final class Encrypting extends SecretStreamProcessor {
+        private final SecretStream stream;
+        private final Cipher cipher;
+        private final byte[] buffer;
+        private int position;
+        private long index;
+        private boolean headerWritten;
+
+        Encrypting(SecretStream stream, Cipher cipher) {
+            this.stream = stream;
+            this.cipher = cipher;
+            this.buffer = new byte[stream.getSegmentSize()];
+        }
+
+        @Override
+        ByteBuffer process(ByteBuffer input, boolean end) throws ChlorideException {
+            while (input != null && input.hasRemaining()) {
+                if (position == buffer.length) {
+                    return seal(false);
+                }
+
+                int count = Math.min(input.remaining(), buffer.length - position);
+                input.get(buffer, position, count);
+                position += count;
+            }
+
+            return end ? seal(true) : null;
+        }
+
+        private ByteBuffer seal(boolean last) throws ChlorideException {
+            int headerLength = headerWritten ? 0 : SecretStream.HEADER_LENGTH;
+            byte[] output = new byte[headerLength + position + SecretStream.TAG_LENGTH];
+            if (!headerWritten) {
+                System.arraycopy(stream.getHeader(), 0, output, 0, headerLength);
+                headerWritten = true;
+            }
+
+            stream.encryptSegment(cipher, index++, last, buffer, 0, position, output, headerLength);
+            position = 0;
+            return ByteBuffer.wrap(output);
+        }
+    }
+
+    /**
+     * Decrypting side of the processor
+     */
+    static final class Decrypting extends SecretStreamProcessor {
+        private final SecretBox box;
+        private final Cipher cipher;
+        private final byte[] header = new byte[SecretStream.HEADER_LENGTH];
+        private SecretStream stream;
+        private byte[] buffer;
+        private int position;
+        private long index;
+
+        Decrypting(SecretBox box, Cipher cipher) {
+            this.box = box;
+            this.cipher = cipher;
+        }
+
+        @Override
+        ByteBuffer process(ByteBuffer input, boolean end) throws ChlorideException {
+            while (input != null && input.hasRemaining()) {
+                if (stream == null) {
+                    int count = Math.min(input.remaining(), header.length - position);
+                    input.get(header, position, count);
+                    position += count;
+                    if (position == header.length) {
+                        stream = box.openStream(header);
+                        buffer = new byte[stream.getSegmentSize() + SecretStream.TAG_LENGTH];
+                        position = 0;
+                    }
+
+                    continue;
+                }
+
+                if (position == buffer.length) {
+                    return open(false);
+                }
+
+                int count = Math.min(input.remaining(), buffer.length - position);
+                input.get(buffer, position, count);
+                position += count;
+            }
+
+            if (!end) {
+                return null;
+            }
+
+            if (stream == null) {
+                throw new ChlorideException(new IllegalBlockSizeException("stream header truncated"));
+            }
+
+            return open(true);
+        }
+
+        private ByteBuffer open(boolean last) throws ChlorideException {
+            byte[] output = new byte[Math.max(0, position - SecretStream.TAG_LENGTH)];
+            stream.decryptSegment(cipher, index++, last, buffer, 0, position, output, 0);
+            position = 0;
+            return ByteBuffer.wrap(output);
+        }
+    }
+}
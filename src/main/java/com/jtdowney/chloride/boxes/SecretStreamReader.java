@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Random access reader for the {@link SecretStream} format. Every segment but the last holds exactly
+ * one segment size of plaintext, so the segments covering a range are found from the header alone and
+ * only those segments are read and authenticated. The final segment is also authenticated up front,
+ * which proves the ciphertext length and so the plaintext size; a ciphertext truncated at a segment
+ * boundary fails before any range is returned. The most recently decrypted segment is kept, so
+ * sequential small reads decrypt each segment once.
+ */
+final class SecretStreamReader {
+    private final Cipher cipher;
+    private final SeekableByteChannel channel;
+    private final long ciphertextSize;
+    private final SecretStream stream;
+    private final int segmentSize;
+    private final long plaintextSize;
+    private final long segments;
+    private final ByteBuffer sealed;
+    private final ByteBuffer plaintext;
+    private long cachedIndex = -1;
+
+    SecretStreamReader(SecretBox box, Cipher cipher, SeekableByteChannel channel) throws IOException {
+        try {
+            this.cipher = cipher;
+            this.channel = channel;
+            this.ciphertextSize = channel.size();
+
+            ByteBuffer header = ByteBuffer.allocate(SecretStream.HEADER_LENGTH);
+            readFully(0, header);
+            this.stream = box.openStream(header.array());
+            this.segmentSize = stream.getSegmentSize();
+            this.plaintextSize = stream.plaintextSize(ciphertextSize);
+            this.segments = SecretStream.segmentCount(plaintextSize, segmentSize);
+            this.sealed = ByteBuffer.allocate(segmentSize + SecretStream.TAG_LENGTH);
+            this.plaintext = ByteBuffer.allocate(segmentSize);
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+
+        load(segments - 1);
+    }
+
+    /**
+     * Decrypt the given range of a ciphertext held in memory
+     */
+    static byte[] decryptRange(SecretBox box, Cipher cipher, byte[] ciphertext, long offset, int length) throws ChlorideException {
+        if (ciphertext.length < SecretStream.HEADER_LENGTH) {
+            throw new ChlorideException(new IllegalBlockSizeException("ciphertext too short"));
+        }
+
+        SecretStream stream = box.openStream(Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH));
+        int segmentSize = stream.getSegmentSize();
+        long plaintextSize = stream.plaintextSize(ciphertext.length);
+        long segments = SecretStream.segmentCount(plaintextSize, segmentSize);
+        int sealedSegmentSize = segmentSize + SecretStream.TAG_LENGTH;
+        byte[] segment = new byte[segmentSize];
+
+        // Authenticate the final segment first so a truncated ciphertext is never mistaken for a shorter one
+        int lastOffset = (int) (SecretStream.HEADER_LENGTH + (segments - 1) * sealedSegmentSize);
+        stream.decryptSegment(cipher, segments - 1, true, ciphertext, lastOffset, ciphertext.length - lastOffset, segment, 0);
+        checkRange(offset, length, plaintextSize);
+
+        byte[] result = new byte[length];
+        int position = 0;
+        while (position < length) {
+            long index = (offset + position) / segmentSize;
+            int segmentOffset = (int) (offset + position - index * segmentSize);
+            int inputOffset = (int) (SecretStream.HEADER_LENGTH + index * sealedSegmentSize);
+            int inputLength = Math.min(sealedSegmentSize, ciphertext.length - inputOffset);
+            int segmentLength = stream.decryptSegment(cipher, index, index == segments - 1, ciphertext, inputOffset, inputLength, segment, 0);
+
+            int count = Math.min(length - position, segmentLength - segmentOffset);
+            System.arraycopy(segment, segmentOffset, result, position, count);
+            position += count;
+        }
+
+        return result;
+    }
+
+    static void checkRange(long offset, int length, long plaintextSize) throws ChlorideException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative");
+        } else if (offset > plaintextSize - length) {
+            throw new ChlorideException(new EOFException("range extends past the end of the plaintext"));
+        }
+    }
+
+    /**
+     * Decrypt the given range of the plaintext, reusing the buffers and the cached segment of this reader
+     */
+    byte[] readRange(long offset, int length) throws ChlorideException {
+        checkRange(offset, length, plaintextSize);
+        ByteBuffer result = ByteBuffer.allocate(length);
+        try {
+            while (result.hasRemaining()) {
+                if (read(offset + result.position(), result) == -1) {
+                    throw new ChlorideException(new EOFException("range extends past the end of the plaintext"));
+                }
+            }
+        } catch (IOException e) {
+            throw SecretBox.unwrap(e);
+        }
+
+        return result.array();
+    }
+
+    /**
+     * Retrieve the size of the plaintext
+     */
+    long size() {
+        return plaintextSize;
+    }
+
+    /**
+     * Decrypt plaintext starting at the given position into the buffer
+     * @return the number of bytes read, or -1 at the end of the plaintext
+     */
+    int read(long position, ByteBuffer dst) throws IOException {
+        if (position >= plaintextSize) {
+            return -1;
+        }
+
+        int total = 0;
+        while (dst.hasRemaining() && position < plaintextSize) {
+            long index = position / segmentSize;
+            load(index);
+
+            int segmentOffset = (int) (position - index * segmentSize);
+            int count = Math.min(dst.remaining(), plaintext.limit() - segmentOffset);
+            int limit = plaintext.limit();
+            plaintext.position(segmentOffset);
+            plaintext.limit(segmentOffset + count);
+            dst.put(plaintext);
+            plaintext.limit(limit);
+
+            position += count;
+            total += count;
+        }
+
+        return total;
+    }
+
+    private void load(long index) throws IOException {
+        if (cachedIndex == index) {
+            return;
+        }
+
+        cachedIndex = -1;
+        long inputOffset = SecretStream.HEADER_LENGTH + index * (segmentSize + SecretStream.TAG_LENGTH);
+        sealed.clear();
+        sealed.limit((int) Math.min(sealed.capacity(), ciphertextSize - inputOffset));
+        readFully(inputOffset, sealed);
+        sealed.flip();
+
+        try {
+            plaintext.clear();
+            stream.decryptSegment(cipher, index, index == segments - 1, sealed, plaintext);
+            plaintext.flip();
+            cachedIndex = index;
+        } catch (ChlorideException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void readFully(long position, ByteBuffer dst) throws IOException {
+        channel.position(position);
+        while (dst.hasRemaining()) {
+            if (channel.read(dst) == -1) {
+                throw new EOFException("truncated ciphertext");
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.PrivateKey;
+import com.jtdowney.chloride.keys.PublicKey;
+import com.jtdowney.chloride.keys.SecretKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of shared keys between one private key and many peers
+ * <p>
+ * Servers that talk to many peers can use the cache to avoid repeating the key agreement for every
+ * message. The least recently used peers are evicted once the cache is full. The cache is safe to share
+ * between threads; key agreement runs outside of the cache lock.
+ */
+public class SharedKeyCache {
+    private final PrivateKey privateKey;
+    private final String context;
+    private final Map<PublicKey, SecretBox> boxes;
+
+    /**
+     * Create a new cache for the given private key
+     * @param privateKey the local private key
+     * @param maximumSize the maximum number of peers to keep
+     */
+    public SharedKeyCache(PrivateKey privateKey, final int maximumSize) {
+        this(privateKey, maximumSize, null);
+    }
+
+    /**
+     * Create a new cache whose boxes use a subkey of each shared key for the given context, keeping them
+     * apart from ordinary {@link Box} messages
+     */
+    SharedKeyCache(PrivateKey privateKey, final int maximumSize, String context) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+
+        this.privateKey = privateKey;
+        this.context = context;
+        this.boxes = new LinkedHashMap<PublicKey, SecretBox>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PublicKey, SecretBox> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the secret box shared with the given peer, deriving it if it is not cached
+     * @param publicKey the peer's public key
+     * @return the secret box over the shared key
+     * @throws ChlorideException when the key agreement fails
+     */
+    public SecretBox get(PublicKey publicKey) throws ChlorideException {
+        SecretBox box;
+        synchronized (this.boxes) {
+            box = this.boxes.get(publicKey);
+        }
+
+        if (box == null) {
+            SecretKey sharedKey = Box.deriveSharedKey(this.privateKey, publicKey);
+            box = new SecretBox(this.context == null ? sharedKey : sharedKey.deriveSubkey(this.context, 0));
+            synchronized (this.boxes) {
+                this.boxes.put(publicKey, box);
+            }
+        }
+
+        return box;
+    }
+
+    /**
+     * Remove the given peer from the cache
+     * @param publicKey the peer's public key
+     */
+    public void invalidate(PublicKey publicKey) {
+        synchronized (this.boxes) {
+            this.boxes.remove(publicKey);
+        }
+    }
+
+    /**
+     * Retrieve the number of peers currently cached
+     * @return the number of cached peers
+     */
+    public int size() {
+        synchronized (this.boxes) {
+            return this.boxes.size();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.keys.SigningKey;
+import com.jtdowney.chloride.keys.VerifyKey;
+import org.bouncycastle.crypto.params.Ed25519PrivateKeyParameters;
+import org.bouncycastle.math.ec.rfc8032.Ed25519;
+
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntFunction;
+
+/**
+ * Box for Ed25519 signatures
+ * <p>
+ * Signatures are detached and always 64 bytes. {@code verifyAll} checks each signature on its own, optionally
+ * spreading the records over an executor, and reports which records failed. This is parallel single
+ * verification rather than Ed25519 batch verification, so it costs the same work per signature as
+ * {@link #verify(byte[], byte[])}.
+ */
+public class SignBox {
+    /**
+     * The length of a signature
+     */
+    public static final int SIGNATURE_LENGTH = 64;
+
+    private static final int RECORDS_PER_TASK = 64;
+
+    private final Ed25519PrivateKeyParameters signingKey;
+    private final byte[] verifyKey;
+
+    /**
+     * Create a box that signs with the given key and verifies with its verify key
+     * @param signingKey the signing key
+     */
+    public SignBox(SigningKey signingKey) {
+        this.signingKey = new Ed25519PrivateKeyParameters(signingKey.getBytes(), 0);
+        this.verifyKey = signingKey.getVerifyKey().getBytes();
+    }
+
+    /**
+     * Create a box that verifies signatures made by the given key
+     * @param verifyKey the verify key
+     */
+    public SignBox(VerifyKey verifyKey) {
+        this.signingKey = null;
+        this.verifyKey = verifyKey.getBytes();
+    }
+
+    /**
+     * Sign the given message
+     * @param message value to sign
+     * @return the 64 byte signature
+     */
+    public byte[] sign(byte[] message) {
+        if (signingKey == null) {
+            throw new IllegalStateException("box was created for verifying signatures");
+        }
+
+        byte[] signature = new byte[SIGNATURE_LENGTH];
+        signingKey.sign(Ed25519.Algorithm.Ed25519, null, message, 0, message.length, signature, 0);
+        return signature;
+    }
+
+    /**
+     * Verify the signature over the given message
+     * @param message the signed value
+     * @param signature the signature
+     * @throws ChlorideException when the signature is not valid
+     */
+    public void verify(byte[] message, byte[] signature) throws ChlorideException {
+        verify(verifyKey, message, signature);
+    }
+
+    /**
+     * Verify each signature made by this box's key on the calling thread
+     * @param messages the signed values
+     * @param signatures the signature for each value
+     * @return the messages whose signatures are valid, or the error for each record that failed
+     */
+    public BatchResult verifyAll(List<byte[]> messages, List<byte[]> signatures) {
+        BatchResult result = newResult(messages, signatures);
+        verify(i -> verifyKey, messages, signatures, 0, messages.size(), result);
+        return result;
+    }
+
+    /**
+     * Verify each signature made by this box's key, spreading the records over the given executor
+     * @param messages the signed values
+     * @param signatures the signature for each value
+     * @param executor executor to verify records on
+     * @return the messages whose signatures are valid, or the error for each record that failed
+     * @throws ChlorideException when the calling thread is interrupted or a task fails to run
+     */
+    public BatchResult verifyAll(List<byte[]> messages, List<byte[]> signatures, ExecutorService executor) throws ChlorideException {
+        return verifyAll(i -> verifyKey, messages, signatures, executor);
+    }
+
+    /**
+     * Verify each signature made by its own key on the calling thread
+     * @param verifyKeys the key that made each signature
+     * @param messages the signed values
+     * @param signatures the signature for each value
+     * @return the messages whose signatures are valid, or the error for each record that failed
+     */
+    public static BatchResult verifyAll(List<VerifyKey> verifyKeys, List<byte[]> messages, List<byte[]> signatures) {
+        checkKeys(verifyKeys, messages);
+        BatchResult result = newResult(messages, signatures);
+        verify(i -> verifyKeys.get(i).getBytes(), messages, signatures, 0, messages.size(), result);
+        return result;
+    }
+
+    /**
+     * Verify each signature made by its own key, spreading the records over the given executor
+     * @param verifyKeys the key that made each signature
+     * @param messages the signed values
+     * @param signatures the signature for each value
+     * @param executor executor to verify records on
+     * @return the messages whose signatures are valid, or the error for each record that failed
+     * @throws ChlorideException when the calling thread is interrupted or a task fails to run
+     */
+    public static BatchResult verifyAll(List<VerifyKey> verifyKeys, List<byte[]> messages, List<byte[]> signatures, ExecutorService executor) throws ChlorideException {
+        checkKeys(verifyKeys, messages);
+        return verifyAll(i -> verifyKeys.get(i).getBytes(), messages, signatures, executor);
+    }
+
+    private static void checkKeys(List<VerifyKey> verifyKeys, List<byte[]> messages) {
+        if (verifyKeys.size() != messages.size()) {
+            throw new IllegalArgumentException("keys and messages must have the same size");
+        }
+    }
+
+    private static BatchResult newResult(List<byte[]> messages, List<byte[]> signatures) {
+        if (messages.size() != signatures.size()) {
+            throw new IllegalArgumentException("messages and signatures must have the same size");
+        }
+
+        return new BatchResult(messages.size());
+    }
+
+    private static BatchResult verifyAll(final IntFunction<byte[]> verifyKeys, final List<byte[]> messages, final List<byte[]> signatures, ExecutorService executor) throws ChlorideException {
+        final BatchResult result = newResult(messages, signatures);
+        if (messages.size() <= RECORDS_PER_TASK) {
+            verify(verifyKeys, messages, signatures, 0, messages.size(), result);
+            return result;
+        }
+
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int start = 0; start < messages.size(); start += RECORDS_PER_TASK) {
+                final int first = start;
+                final int last = Math.min(messages.size(), start + RECORDS_PER_TASK);
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        verify(verifyKeys, messages, signatures, first, last, result);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChlorideException(e);
+        } catch (ExecutionException | RejectedExecutionException e) {
+            throw new ChlorideException(e);
+        } finally {
+            for (Future<Void> future : futures) {
+                future.cancel(false);
+            }
+        }
+
+        return result;
+    }
+
+    private static void verify(IntFunction<byte[]> verifyKeys, List<byte[]> messages, List<byte[]> signatures, int first, int last, BatchResult result) {
+        for (int i = first; i < last; i++) {
+            try {
+                verify(verifyKeys.apply(i), messages.get(i), signatures.get(i));
+                result.succeed(i, messages.get(i));
+            } catch (ChlorideException e) {
+                result.fail(i, e);
+            }
+        }
+    }
+
+    private static void verify(byte[] verifyKey, byte[] message, byte[] signature) throws ChlorideException {
+        if (signature.length != SIGNATURE_LENGTH) {
+            throw new ChlorideException(new SignatureException("invalid signature length"));
+        }
+
+        if (!Ed25519.verify(signature, 0, verifyKey, 0, message, 0, message.length)) {
+            throw new ChlorideException(new SignatureException("signature verification failed"));
+        }
+    }
+}
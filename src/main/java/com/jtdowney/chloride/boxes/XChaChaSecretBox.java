@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.crypto.InvalidCipherTextException;
+import org.bouncycastle.crypto.modes.ChaCha20Poly1305;
+import org.bouncycastle.crypto.params.AEADParameters;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.Pack;
+
+import javax.crypto.IllegalBlockSizeException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Box for symmetric encryption with XChaCha20-Poly1305
+ * <p>
+ * This is an alternative to {@link SecretBox} for hosts without AES hardware acceleration, where
+ * ChaCha20 is considerably faster than AES-GCM. The 192-bit nonce makes random nonces safe for any
+ * practical number of messages under one key. Ciphertexts start with an algorithm identifier, followed
+ * by the nonce, the encrypted value and the Poly1305 tag; the identifier is authenticated as well.
+ */
+public class XChaChaSecretBox {
+    /**
+     * Algorithm identifier written as the first byte of every ciphertext
+     */
+    public static final byte ALGORITHM_ID = 0x01;
+
+    private static final int NONCE_LENGTH = 24;
+    private static final int TAG_LENGTH = 16;
+    private static final int HEADER_LENGTH = 1 + NONCE_LENGTH;
+    private static final int[] SIGMA = Pack.littleEndianToInt(new byte[]{
+            'e', 'x', 'p', 'a', 'n', 'd', ' ', '3', '2', '-', 'b', 'y', 't', 'e', ' ', 'k'}, 0, 4);
+    private static final ThreadLocal<ChaCha20Poly1305> CIPHERS = new ThreadLocal<>();
+
+    private final byte[] key;
+
+    /**
+     * Create a secret box using the provided secret key.
+     * @param key secret key to encrypt with
+     */
+    public XChaChaSecretBox(SecretKey key) {
+        this.key = key.getBytes();
+    }
+
+    /**
+     * Calculate the size of the ciphertext produced for a plaintext of the given length
+     * @param plaintextLength length of the plaintext
+     * @return length of the ciphertext, including the header and authentication tag
+     */
+    public int outputSize(int plaintextLength) {
+        return HEADER_LENGTH + plaintextLength + TAG_LENGTH;
+    }
+
+    /**
+     * Encrypt the given plaintext
+     * @param plaintext value to encrypt
+     * @return the encrypted value
+     * @throws ChlorideException when an error occurs during encryption
+     */
+    public byte[] encrypt(byte[] plaintext) throws ChlorideException {
+        try {
+            byte[] ciphertext = new byte[outputSize(plaintext.length)];
+            byte[] nonce = new byte[NONCE_LENGTH];
+            Randoms.get().nextBytes(nonce);
+            ciphertext[0] = ALGORITHM_ID;
+            System.arraycopy(nonce, 0, ciphertext, 1, NONCE_LENGTH);
+
+            ChaCha20Poly1305 cipher = initCipher(true, nonce);
+            int length = cipher.processBytes(plaintext, 0, plaintext.length, ciphertext, HEADER_LENGTH);
+            cipher.doFinal(ciphertext, HEADER_LENGTH + length);
+            return ciphertext;
+        } catch (NoSuchAlgorithmException | InvalidCipherTextException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Decrypt the given ciphertext
+     * @param ciphertext value to decrypt
+     * @return decrypted value
+     * @throws ChlorideException when an error occurs during decryption
+     */
+    public byte[] decrypt(byte[] ciphertext) throws ChlorideException {
+        try {
+            if (ciphertext.length < HEADER_LENGTH + TAG_LENGTH) {
+                throw new IllegalBlockSizeException("ciphertext too short");
+            }
+
+            if (ciphertext[0] != ALGORITHM_ID) {
+                throw new InvalidAlgorithmParameterException("unsupported algorithm identifier");
+            }
+
+            byte[] nonce = new byte[NONCE_LENGTH];
+            System.arraycopy(ciphertext, 1, nonce, 0, NONCE_LENGTH);
+
+            ChaCha20Poly1305 cipher = initCipher(false, nonce);
+            byte[] plaintext = new byte[ciphertext.length - HEADER_LENGTH - TAG_LENGTH];
+            int length = cipher.processBytes(ciphertext, HEADER_LENGTH, ciphertext.length - HEADER_LENGTH, plaintext, 0);
+            cipher.doFinal(plaintext, length);
+            return plaintext;
+        } catch (IllegalBlockSizeException | InvalidAlgorithmParameterException | InvalidCipherTextException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    private ChaCha20Poly1305 initCipher(boolean forEncryption, byte[] nonce) {
+        ChaCha20Poly1305 cipher = CIPHERS.get();
+        if (cipher == null) {
+            cipher = new ChaCha20Poly1305();
+            CIPHERS.set(cipher);
+        }
+
+        byte[] subkey = hChaCha20(key, nonce);
+        byte[] chachaNonce = new byte[12];
+        System.arraycopy(nonce, 16, chachaNonce, 4, 8);
+        cipher.init(forEncryption, new AEADParameters(new KeyParameter(subkey), TAG_LENGTH * 8, chachaNonce, new byte[]{ALGORITHM_ID}));
+        return cipher;
+    }
+
+    /**
+     * Derive a subkey from the key and the first 16 bytes of the nonce using HChaCha20
+     */
+    static byte[] hChaCha20(byte[] key, byte[] nonce) {
+        int[] x = new int[16];
+        System.arraycopy(SIGMA, 0, x, 0, 4);
+        Pack.littleEndianToInt(key, 0, x, 4, 8);
+        Pack.littleEndianToInt(nonce, 0, x, 12, 4);
+
+        for (int i = 0; i < 10; i++) {
+            quarterRound(x, 0, 4, 8, 12);
+            quarterRound(x, 1, 5, 9, 13);
+            quarterRound(x, 2, 6, 10, 14);
+            quarterRound(x, 3, 7, 11, 15);
+            quarterRound(x, 0, 5, 10, 15);
+            quarterRound(x, 1, 6, 11, 12);
+            quarterRound(x, 2, 7, 8, 13);
+            quarterRound(x, 3, 4, 9, 14);
+        }
+
+        byte[] subkey = new byte[32];
+        Pack.intToLittleEndian(new int[]{x[0], x[1], x[2], x[3]}, subkey, 0);
+        Pack.intToLittleEndian(new int[]{x[12], x[13], x[14], x[15]}, subkey, 16);
+        return subkey;
+    }
+
+    private static void quarterRound(int[] x, int a, int b, int c, int d) {
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 16);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 12);
+        x[a] += x[b];
+        x[d] = Integer.rotateLeft(x[d] ^ x[a], 8);
+        x[c] += x[d];
+        x[b] = Integer.rotateLeft(x[b] ^ x[c], 7);
+    }
+}
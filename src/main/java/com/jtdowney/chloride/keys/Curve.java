@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideException;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+
+import java.security.Key;
+import java.security.spec.InvalidKeySpecException;
+
+/**
+ * Elliptic curves supported for key agreement
+ */
+public enum Curve {
+    /**
+     * NIST P-256 (prime256v1) with ECDH, the original Chloride curve
+     */
+    P256("EC", "ECDH", "ECDH", 65, 33),
+
+    /**
+     * Curve25519 with X25519, which is faster and has 32 byte public keys
+     */
+    X25519("X25519", "X25519", "X25519", 32, 32);
+
+    private final String keyPairAlgorithm;
+    private final String keyFactoryAlgorithm;
+    private final String agreementAlgorithm;
+    private final int rawLength;
+    private final int compressedLength;
+
+    Curve(String keyPairAlgorithm, String keyFactoryAlgorithm, String agreementAlgorithm, int rawLength, int compressedLength) {
+        this.keyPairAlgorithm = keyPairAlgorithm;
+        this.keyFactoryAlgorithm = keyFactoryAlgorithm;
+        this.agreementAlgorithm = agreementAlgorithm;
+        this.rawLength = rawLength;
+        this.compressedLength = compressedLength;
+    }
+
+    /**
+     * Retrieve the JCA algorithm name used for key agreement on this curve
+     * @return the key agreement algorithm
+     */
+    public String getAgreementAlgorithm() {
+        return agreementAlgorithm;
+    }
+
+    /**
+     * Retrieve the length of a raw public key on this curve
+     * @return the raw public key length in bytes
+     */
+    public int getRawLength() {
+        return rawLength;
+    }
+
+    /**
+     * Retrieve the length of a compressed raw public key on this curve
+     * @return the compressed public key length in bytes
+     */
+    public int getCompressedLength() {
+        return compressedLength;
+    }
+
+    String getKeyPairAlgorithm() {
+        return keyPairAlgorithm;
+    }
+
+    String getKeyFactoryAlgorithm() {
+        return keyFactoryAlgorithm;
+    }
+
+    static Curve forKey(Key key) {
+        String algorithm = key.getAlgorithm();
+        if ("X25519".equals(algorithm) || "XDH".equals(algorithm)) {
+            return X25519;
+        }
+
+        return P256;
+    }
+
+    static Curve forPublicKeyEncoding(byte[] data) throws ChlorideException {
+        try {
+            return forIdentifier(SubjectPublicKeyInfo.getInstance(data).getAlgorithm().getAlgorithm());
+        } catch (IllegalArgumentException e) {
+            throw new ChlorideException(new InvalidKeySpecException("invalid public key encoding", e));
+        }
+    }
+
+    static Curve forPrivateKeyEncoding(byte[] data) throws ChlorideException {
+        try {
+            return forIdentifier(PrivateKeyInfo.getInstance(data).getPrivateKeyAlgorithm().getAlgorithm());
+        } catch (IllegalArgumentException e) {
+            throw new ChlorideException(new InvalidKeySpecException("invalid private key encoding", e));
+        }
+    }
+
+    private static Curve forIdentifier(ASN1ObjectIdentifier identifier) {
+        return EdECObjectIdentifiers.id_X25519.equals(identifier) ? X25519 : P256;
+    }
+}
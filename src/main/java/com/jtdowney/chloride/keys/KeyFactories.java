@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-thread key factories and a bounded cache of decoded public keys. Key factories are not safe to
+ * share between threads, so each thread keeps its own instance per algorithm instead of looking one up
+ * for every key.
+ */
+final class KeyFactories {
+    static final int PUBLIC_KEY_CACHE_SIZE = 4096;
+
+    private static final ThreadLocal<Map<String, KeyFactory>> FACTORIES = new ThreadLocal<>();
+    private static final Map<Object, java.security.PublicKey> PUBLIC_KEYS = new LinkedHashMap<Object, java.security.PublicKey>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, java.security.PublicKey> eldest) {
+            return size() > PUBLIC_KEY_CACHE_SIZE;
+        }
+    };
+
+    private KeyFactories() {
+    }
+
+    static KeyFactory get(String algorithm) throws NoSuchAlgorithmException, NoSuchProviderException {
+        Map<String, KeyFactory> factories = FACTORIES.get();
+        if (factories == null) {
+            factories = new HashMap<>();
+            FACTORIES.set(factories);
+        }
+
+        KeyFactory factory = factories.get(algorithm);
+        if (factory == null) {
+            factory = KeyFactory.getInstance(algorithm, "BC");
+            factories.put(algorithm, factory);
+        }
+
+        return factory;
+    }
+
+    static java.security.PublicKey cachedPublicKey(Object encoding) {
+        synchronized (PUBLIC_KEYS) {
+            return PUBLIC_KEYS.get(encoding);
+        }
+    }
+
+    static void cachePublicKey(Object encoding, java.security.PublicKey key) {
+        synchronized (PUBLIC_KEYS) {
+            PUBLIC_KEYS.put(encoding, key);
+        }
+    }
+}
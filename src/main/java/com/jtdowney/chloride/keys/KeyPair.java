@@ -22,10 +22,14 @@
 
 package com.jtdowney.chloride.keys;
 
+import com.jtdowney.chloride.Async;
 import com.jtdowney.chloride.ChlorideException;
 
 import java.security.*;
 import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Key pair for asymmetric encryption
@@ -40,15 +44,29 @@ public class KeyPair {
     }
 
     /**
-     * Generate a new asymmetric key pair
+     * Generate a new asymmetric key pair on curve P-256
      * @return an asymmetric key pair
      * @throws ChlorideException when there is an error generating the key pair
      */
     public static KeyPair generate() throws ChlorideException {
+        return generate(Curve.P256);
+    }
+
+    /**
+     * Generate a new asymmetric key pair on the given curve
+     * @param curve the curve to generate the key pair on
+     * @return an asymmetric key pair
+     * @throws ChlorideException when there is an error generating the key pair
+     */
+    public static KeyPair generate(Curve curve) throws ChlorideException {
         try {
-            ECGenParameterSpec spec = new ECGenParameterSpec("prime256v1");
-            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC", "BC");
-            generator.initialize(spec, new SecureRandom());
+            KeyPairGenerator generator = KeyPairGenerator.getInstance(curve.getKeyPairAlgorithm(), "BC");
+            if (curve == Curve.P256) {
+                generator.initialize(new ECGenParameterSpec("prime256v1"), new SecureRandom());
+            } else {
+                generator.initialize(255, new SecureRandom());
+            }
+
             java.security.KeyPair pair = generator.generateKeyPair();
             PrivateKey privateKey = new PrivateKey(pair.getPrivate());
             PublicKey publicKey = new PublicKey(pair.getPublic());
@@ -58,6 +76,56 @@ public class KeyPair {
         }
     }
 
+    /**
+     * Generate a new asymmetric key pair on curve P-256 asynchronously
+     * @return a future for the key pair
+     */
+    public static CompletableFuture<KeyPair> generateAsync() {
+        return generateAsync(Curve.P256, Async.defaultExecutor());
+    }
+
+    /**
+     * Generate a new asymmetric key pair on the given curve asynchronously
+     * @param curve the curve to generate the key pair on
+     * @return a future for the key pair
+     */
+    public static CompletableFuture<KeyPair> generateAsync(Curve curve) {
+        return generateAsync(curve, Async.defaultExecutor());
+    }
+
+    /**
+     * Generate a new asymmetric key pair on curve P-256 asynchronously
+     * @param executor the executor to generate the key pair on
+     * @return a future for the key pair
+     */
+    public static CompletableFuture<KeyPair> generateAsync(Executor executor) {
+        return generateAsync(Curve.P256, executor);
+    }
+
+    /**
+     * Generate a new asymmetric key pair on the given curve asynchronously. When the executor rejects the
+     * task the future fails with the {@link RejectedExecutionException}.
+     * @param curve the curve to generate the key pair on
+     * @param executor the executor to generate the key pair on
+     * @return a future for the key pair
+     */
+    public static CompletableFuture<KeyPair> generateAsync(final Curve curve, Executor executor) {
+        final CompletableFuture<KeyPair> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(generate(curve));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
     /**
      * Retrieve the private key
      * @return the private key
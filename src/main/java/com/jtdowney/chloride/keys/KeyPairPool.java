@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideException;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pre-generated single use key pairs
+ * <p>
+ * A background thread keeps a bounded queue filled with fresh key pairs, so callers that need an
+ * ephemeral key pair rarely wait on key generation. Every key pair is handed out exactly once. When the
+ * queue is empty a key pair is generated on the calling thread and counted as a miss.
+ */
+public class KeyPairPool implements Closeable {
+    private final Curve curve;
+    private final BlockingQueue<KeyPair> queue;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Thread generator;
+    private ChlorideException failure;
+    private boolean closed;
+
+    /**
+     * Create a pool and start its background generator
+     * @param curve the curve to generate key pairs on
+     * @param capacity the maximum number of key pairs to keep ready
+     */
+    public KeyPairPool(Curve curve, int capacity) {
+        this.curve = curve;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        start();
+    }
+
+    /**
+     * Take a key pair out of the pool, generating one if the pool is empty. If the background generator
+     * stopped because key generation failed, the failure is thrown once by the next call that finds the
+     * pool empty and the generator is restarted.
+     * @return a key pair that has not been handed out before
+     * @throws ChlorideException when there is an error generating the key pair
+     */
+    public KeyPair take() throws ChlorideException {
+        KeyPair pair = queue.poll();
+        if (pair != null) {
+            hits.incrementAndGet();
+            return pair;
+        }
+
+        restartAfterFailure();
+        misses.incrementAndGet();
+        return KeyPair.generate(curve);
+    }
+
+    /**
+     * Retrieve the curve key pairs are generated on
+     * @return the curve
+     */
+    public Curve getCurve() {
+        return curve;
+    }
+
+    /**
+     * Retrieve the number of key pairs ready in the pool
+     * @return the number of ready key pairs
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Retrieve the number of key pairs served from the pool
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Retrieve the number of times the pool was empty and a key pair was generated inline
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Stop the background generator and discard the key pairs that are ready
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        generator.interrupt();
+        queue.clear();
+    }
+
+    KeyPair generate() throws ChlorideException {
+        return KeyPair.generate(curve);
+    }
+
+    private synchronized void start() {
+        generator = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        queue.put(generate());
+                    }
+                } catch (InterruptedException e) {
+                    // closed, callers fall back to generating inline
+                } catch (ChlorideException e) {
+                    fail(e);
+                } catch (RuntimeException e) {
+                    fail(new ChlorideException(e));
+                }
+            }
+        }, "chloride-key-pair-pool");
+        generator.setDaemon(true);
+        generator.start();
+    }
+
+    private synchronized void fail(ChlorideException e) {
+        failure = e;
+    }
+
+    private synchronized void restartAfterFailure() throws ChlorideException {
+        ChlorideException e = failure;
+        if (e == null) {
+            return;
+        }
+
+        failure = null;
+        if (!closed) {
+            start();
+        }
+
+        throw e;
+    }
+}
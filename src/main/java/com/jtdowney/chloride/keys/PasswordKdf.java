@@ -0,0 +1,267 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.generators.SCrypt;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+import org.bouncycastle.util.Strings;
+
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Password based key derivation for {@link SecretKey}
+ * <p>
+ * Argon2id is used by default, with scrypt available for systems that need it. The parameters are not
+ * stored with the key, so the same parameters and salt must be used every time a key is derived from a
+ * password. {@link #calibrate(long, int, int)} picks Argon2id parameters that take about a given time
+ * on the current host.
+ */
+public final class PasswordKdf {
+    /**
+     * The length of salts created by {@link #generateSalt()}
+     */
+    public static final int SALT_LENGTH = 16;
+
+    private static final int MIN_SALT_LENGTH = 8;
+    private static final int KEY_LENGTH = 32;
+    private static final int MIN_CALIBRATION_MEMORY = 8 * 1024;
+    private static final char[] CALIBRATION_PASSWORD = "chloride calibration".toCharArray();
+
+    /**
+     * Password hashing algorithms
+     */
+    public enum Algorithm {
+        ARGON2ID,
+        SCRYPT
+    }
+
+    private final Algorithm algorithm;
+    private final int memoryKiB;
+    private final int iterations;
+    private final int cost;
+    private final int blockSize;
+    private final int parallelism;
+
+    private PasswordKdf(Algorithm algorithm, int memoryKiB, int iterations, int cost, int blockSize, int parallelism) {
+        this.algorithm = algorithm;
+        this.memoryKiB = memoryKiB;
+        this.iterations = iterations;
+        this.cost = cost;
+        this.blockSize = blockSize;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Argon2id with 64 MiB of memory, 3 iterations and 4 lanes
+     * @return the default key derivation
+     */
+    public static PasswordKdf defaults() {
+        return argon2id(64 * 1024, 3, 4);
+    }
+
+    /**
+     * Argon2id with the given parameters
+     * @param memoryKiB the memory to use in KiB, at least 8 per lane
+     * @param iterations the number of passes over the memory
+     * @param parallelism the number of lanes
+     * @return an Argon2id key derivation
+     */
+    public static PasswordKdf argon2id(int memoryKiB, int iterations, int parallelism) {
+        if (parallelism < 1 || parallelism > 0xffffff) {
+            throw new IllegalArgumentException("parallelism must be between 1 and " + 0xffffff);
+        }
+
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+
+        if (memoryKiB < 8 * parallelism) {
+            throw new IllegalArgumentException("memory must be at least 8 KiB per lane");
+        }
+
+        return new PasswordKdf(Algorithm.ARGON2ID, memoryKiB, iterations, 0, 0, parallelism);
+    }
+
+    /**
+     * scrypt with the given parameters. Memory use is 128 * cost * blockSize bytes.
+     * @param cost the CPU and memory cost, a power of two greater than one
+     * @param blockSize the block size
+     * @param parallelism the parallelization parameter
+     * @return a scrypt key derivation
+     */
+    public static PasswordKdf scrypt(int cost, int blockSize, int parallelism) {
+        if (cost <= 1 || (cost & (cost - 1)) != 0) {
+            throw new IllegalArgumentException("cost must be a power of two greater than one");
+        }
+
+        if (blockSize < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("blockSize and parallelism must be positive");
+        }
+
+        return new PasswordKdf(Algorithm.SCRYPT, 0, 0, cost, blockSize, parallelism);
+    }
+
+    /**
+     * Pick Argon2id parameters that take about the given time on this host. One untimed derivation runs
+     * first so class loading and JIT compilation are not counted. The iteration count is then raised
+     * until the target is reached; when a single iteration is already too slow the memory is halved
+     * instead, down to 8 MiB.
+     * @param targetMillis the target time for one derivation in milliseconds
+     * @param maxMemoryKiB the most memory to use in KiB
+     * @param parallelism the number of lanes
+     * @return a calibrated Argon2id key derivation
+     */
+    public static PasswordKdf calibrate(long targetMillis, int maxMemoryKiB, int parallelism) {
+        if (targetMillis <= 0) {
+            throw new IllegalArgumentException("targetMillis must be positive");
+        }
+
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        byte[] salt = new byte[SALT_LENGTH];
+        int memoryKiB = maxMemoryKiB;
+        PasswordKdf candidate = argon2id(memoryKiB, 1, parallelism);
+        candidate.deriveKey(CALIBRATION_PASSWORD, salt);
+        long elapsedNanos = time(candidate, salt);
+        while (elapsedNanos > targetNanos && memoryKiB / 2 >= Math.max(MIN_CALIBRATION_MEMORY, 8 * parallelism)) {
+            memoryKiB /= 2;
+            candidate = argon2id(memoryKiB, 1, parallelism);
+            elapsedNanos = time(candidate, salt);
+        }
+
+        int iterations = (int) Math.max(1, Math.min(Integer.MAX_VALUE, targetNanos / Math.max(1, elapsedNanos)));
+        return argon2id(memoryKiB, iterations, parallelism);
+    }
+
+    /**
+     * Generate a random salt
+     * @return a 16 byte salt
+     * @throws ChlorideException when SecureRandom fails to initialize
+     */
+    public static byte[] generateSalt() throws ChlorideException {
+        try {
+            byte[] salt = new byte[SALT_LENGTH];
+            Randoms.get().nextBytes(salt);
+            return salt;
+        } catch (NoSuchAlgorithmException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Derive a key from the given password
+     * @param password the password
+     * @param salt a random salt of at least 8 bytes, stored alongside whatever the key protects
+     * @return the derived secret key
+     */
+    public SecretKey deriveKey(char[] password, byte[] salt) {
+        if (salt.length < MIN_SALT_LENGTH) {
+            throw new IllegalArgumentException("salt must be at least " + MIN_SALT_LENGTH + " bytes");
+        }
+
+        byte[] key = new byte[KEY_LENGTH];
+        if (algorithm == Algorithm.ARGON2ID) {
+            Argon2Parameters parameters = new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+                    .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+                    .withMemoryAsKB(memoryKiB)
+                    .withIterations(iterations)
+                    .withParallelism(parallelism)
+                    .withSalt(salt)
+                    .build();
+            Argon2BytesGenerator generator = new Argon2BytesGenerator();
+            generator.init(parameters);
+            generator.generateBytes(password, key);
+        } else {
+            byte[] passwordBytes = Strings.toUTF8ByteArray(password);
+            try {
+                key = SCrypt.generate(passwordBytes, salt, cost, blockSize, parallelism, KEY_LENGTH);
+            } finally {
+                Arrays.fill(passwordBytes, (byte) 0);
+            }
+        }
+
+        try {
+            return new SecretKey(key);
+        } finally {
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    /**
+     * Retrieve the password hashing algorithm
+     * @return the algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Retrieve the Argon2id memory size
+     * @return the memory in KiB, or 0 for scrypt
+     */
+    public int getMemoryKiB() {
+        return memoryKiB;
+    }
+
+    /**
+     * Retrieve the number of Argon2id passes over the memory
+     * @return the iterations, or 0 for scrypt
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Retrieve the scrypt CPU and memory cost, N
+     * @return the cost, or 0 for Argon2id
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * Retrieve the scrypt block size, r
+     * @return the block size, or 0 for Argon2id
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Retrieve the number of Argon2id lanes or the scrypt parallelization parameter, p
+     * @return the parallelism
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    private static long time(PasswordKdf kdf, byte[] salt) {
+        long start = System.nanoTime();
+        kdf.deriveKey(CALIBRATION_PASSWORD, salt);
+        return System.nanoTime() - start;
+    }
+}
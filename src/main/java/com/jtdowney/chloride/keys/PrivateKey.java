@@ -24,8 +24,8 @@ package com.jtdowney.chloride.keys;
 
 import com.jtdowney.chloride.ChlorideException;
 
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 
@@ -46,9 +46,9 @@ public class PrivateKey {
      */
     public PrivateKey(byte[] data) throws ChlorideException {
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("ECDH");
-            this.privateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(data));
-        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            Curve curve = Curve.forPrivateKeyEncoding(data);
+            this.privateKey = KeyFactories.get(curve.getKeyFactoryAlgorithm()).generatePrivate(new PKCS8EncodedKeySpec(data));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException | NoSuchProviderException e) {
             throw new ChlorideException(e);
         }
     }
@@ -69,6 +69,14 @@ public class PrivateKey {
         return this.privateKey.getEncoded();
     }
 
+    /**
+     * Retrieve the curve the key is on
+     * @return the curve
+     */
+    public Curve getCurve() {
+        return Curve.forKey(this.privateKey);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -23,17 +23,35 @@
 package com.jtdowney.chloride.keys;
 
 import com.jtdowney.chloride.ChlorideException;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
 
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECPoint;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Asymmetric public key
+ * <p>
+ * Decoded keys are kept in a bounded cache keyed by their encoding, so rebuilding a key from an encoding
+ * seen recently skips parsing and point validation.
  */
 public class PublicKey {
+    private static final byte[] X25519_PREFIX = {0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x6e, 0x03, 0x21, 0x00};
+    private static final int P256_COORDINATE_LENGTH = 32;
+    private static final ECNamedCurveParameterSpec P256_SPEC = ECNamedCurveTable.getParameterSpec("prime256v1");
+
     private java.security.PublicKey publicKey;
+    private byte[] encoded;
 
     PublicKey(java.security.PublicKey publicKey) {
         this.publicKey = publicKey;
@@ -45,10 +63,71 @@ public class PublicKey {
      * @throws ChlorideException when the private key cannot be loaded
      */
     public PublicKey(byte[] data) throws ChlorideException {
+        ByteBuffer cacheKey = ByteBuffer.wrap(data.clone());
+        java.security.PublicKey key = KeyFactories.cachedPublicKey(cacheKey);
+        if (key == null) {
+            try {
+                Curve curve = Curve.forPublicKeyEncoding(data);
+                key = KeyFactories.get(curve.getKeyFactoryAlgorithm()).generatePublic(new X509EncodedKeySpec(data));
+                KeyFactories.cachePublicKey(cacheKey, key);
+            } catch (InvalidKeySpecException | NoSuchAlgorithmException | NoSuchProviderException e) {
+                throw new ChlorideException(e);
+            }
+        }
+
+        this.publicKey = key;
+    }
+
+    /**
+     * Create a public key from its raw encoding. For X25519 this is the 32 byte u-coordinate, for P-256
+     * it is either the 65 byte uncompressed point or the 33 byte compressed point.
+     * @param curve the curve the key is on
+     * @param raw the raw encoded key
+     * @return the public key
+     * @throws ChlorideException when the public key cannot be loaded
+     */
+    public static PublicKey fromRawBytes(Curve curve, byte[] raw) throws ChlorideException {
+        List<Object> cacheKey = Arrays.<Object>asList(curve, ByteBuffer.wrap(raw.clone()));
+        java.security.PublicKey key = KeyFactories.cachedPublicKey(cacheKey);
+        if (key == null) {
+            key = decodeRaw(curve, raw);
+            KeyFactories.cachePublicKey(cacheKey, key);
+        }
+
+        return new PublicKey(key);
+    }
+
+    /**
+     * Create a public key from its raw encoding without using the decoded key cache. Single use keys,
+     * such as the ephemeral keys of sealed boxes, should be loaded this way so they do not evict keys
+     * that are used again.
+     * @param curve the curve the key is on
+     * @param raw the raw encoded key
+     * @return the public key
+     * @throws ChlorideException when the public key cannot be loaded
+     */
+    public static PublicKey fromRawBytesUncached(Curve curve, byte[] raw) throws ChlorideException {
+        return new PublicKey(decodeRaw(curve, raw));
+    }
+
+    private static java.security.PublicKey decodeRaw(Curve curve, byte[] raw) throws ChlorideException {
         try {
-            KeyFactory keyFactory = KeyFactory.getInstance("ECDH");
-            this.publicKey = keyFactory.generatePublic(new X509EncodedKeySpec(data));
-        } catch (InvalidKeySpecException | NoSuchAlgorithmException e) {
+            if (raw.length != curve.getRawLength() && raw.length != curve.getCompressedLength()) {
+                throw new InvalidKeySpecException("invalid raw key length for " + curve);
+            }
+
+            KeyFactory keyFactory = KeyFactories.get(curve.getKeyFactoryAlgorithm());
+            if (curve == Curve.X25519) {
+                byte[] encoded = new byte[X25519_PREFIX.length + raw.length];
+                System.arraycopy(X25519_PREFIX, 0, encoded, 0, X25519_PREFIX.length);
+                System.arraycopy(raw, 0, encoded, X25519_PREFIX.length, raw.length);
+                return keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+            } else {
+                return keyFactory.generatePublic(new ECPublicKeySpec(P256_SPEC.getCurve().decodePoint(raw), P256_SPEC));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ChlorideException(new InvalidKeySpecException("invalid point encoding", e));
+        } catch (InvalidKeySpecException | NoSuchAlgorithmException | NoSuchProviderException e) {
             throw new ChlorideException(e);
         }
     }
@@ -66,7 +145,65 @@ public class PublicKey {
      * @return the DER encoded data
      */
     public byte[] getBytes() {
-        return this.publicKey.getEncoded();
+        byte[] data = this.encoded;
+        if (data == null) {
+            data = this.publicKey.getEncoded();
+            this.encoded = data;
+        }
+
+        return data.clone();
+    }
+
+    /**
+     * Retrieve the raw encoding of the key. For X25519 this is the 32 byte u-coordinate, for P-256 it is
+     * the 65 byte uncompressed point.
+     * @return the raw encoded key
+     */
+    public byte[] getRawBytes() {
+        if (getCurve() == Curve.X25519) {
+            byte[] data = getBytes();
+            byte[] raw = new byte[Curve.X25519.getRawLength()];
+            System.arraycopy(data, data.length - raw.length, raw, 0, raw.length);
+            return raw;
+        }
+
+        ECPoint point = ((ECPublicKey) this.publicKey).getW();
+        byte[] raw = new byte[1 + 2 * P256_COORDINATE_LENGTH];
+        raw[0] = 0x04;
+        writeCoordinate(point.getAffineX(), raw, 1);
+        writeCoordinate(point.getAffineY(), raw, 1 + P256_COORDINATE_LENGTH);
+        return raw;
+    }
+
+    /**
+     * Retrieve the compressed raw encoding of the key. For X25519 this is the same as
+     * {@link #getRawBytes()}, for P-256 it is the 33 byte compressed point.
+     * @return the compressed raw encoded key
+     */
+    public byte[] getCompressedBytes() {
+        if (getCurve() == Curve.X25519) {
+            return getRawBytes();
+        }
+
+        ECPoint point = ((ECPublicKey) this.publicKey).getW();
+        byte[] raw = new byte[1 + P256_COORDINATE_LENGTH];
+        raw[0] = (byte) (point.getAffineY().testBit(0) ? 0x03 : 0x02);
+        writeCoordinate(point.getAffineX(), raw, 1);
+        return raw;
+    }
+
+    /**
+     * Retrieve the curve the key is on
+     * @return the curve
+     */
+    public Curve getCurve() {
+        return Curve.forKey(this.publicKey);
+    }
+
+    private static void writeCoordinate(BigInteger value, byte[] output, int offset) {
+        byte[] bytes = value.toByteArray();
+        int length = Math.min(bytes.length, P256_COORDINATE_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, output, offset + P256_COORDINATE_LENGTH - length, length);
     }
 
     @Override
@@ -23,7 +23,12 @@
 package com.jtdowney.chloride.keys;
 
 import com.jtdowney.chloride.ChlorideException;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
@@ -60,6 +65,28 @@ public class SecretKey {
         }
     }
 
+    /**
+     * Derive a subkey from this key with HKDF-SHA256. The same context and id always derive the same
+     * subkey, and subkeys for different contexts or ids are independent of each other.
+     * @param context a string naming the purpose of the subkey
+     * @param id the subkey identifier within the context
+     * @return the derived secret key
+     */
+    public SecretKey deriveSubkey(String context, long id) {
+        byte[] contextBytes = context.getBytes(StandardCharsets.UTF_8);
+        byte[] info = ByteBuffer.allocate(4 + contextBytes.length + 8)
+                .putInt(contextBytes.length)
+                .put(contextBytes)
+                .putLong(id)
+                .array();
+
+        HKDFBytesGenerator hkdf = new HKDFBytesGenerator(new SHA256Digest());
+        hkdf.init(new HKDFParameters(key, null, info));
+        byte[] subkey = new byte[32];
+        hkdf.generateBytes(subkey, 0, subkey.length);
+        return new SecretKey(subkey);
+    }
+
     /**
      * Retrieve the raw key material
      * @return the 32 byte (256 bit) key material
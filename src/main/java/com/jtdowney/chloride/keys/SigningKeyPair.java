@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.Randoms;
+
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Ed25519 key pair for signing with {@link com.jtdowney.chloride.boxes.SignBox}
+ */
+public class SigningKeyPair {
+    private final SigningKey signingKey;
+
+    /**
+     * Create a key pair from a signing key
+     * @param signingKey the signing key
+     */
+    public SigningKeyPair(SigningKey signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    /**
+     * Generate a new signing key pair
+     * @return a signing key pair
+     * @throws ChlorideException when SecureRandom fails to initialize
+     */
+    public static SigningKeyPair generate() throws ChlorideException {
+        try {
+            byte[] seed = new byte[SigningKey.LENGTH];
+            Randoms.get().nextBytes(seed);
+            return new SigningKeyPair(new SigningKey(seed));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ChlorideException(e);
+        }
+    }
+
+    /**
+     * Retrieve the signing key
+     * @return the signing key
+     */
+    public SigningKey getSigningKey() {
+        return signingKey;
+    }
+
+    /**
+     * Retrieve the verify key
+     * @return the verify key
+     */
+    public VerifyKey getVerifyKey() {
+        return signingKey.getVerifyKey();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import java.util.Arrays;
+
+/**
+ * Ed25519 public key for verifying signatures with {@link com.jtdowney.chloride.boxes.SignBox}
+ */
+public class VerifyKey {
+    /**
+     * The length of an encoded verify key
+     */
+    public static final int LENGTH = 32;
+
+    private final byte[] key;
+
+    /**
+     * Create a verify key from its 32 byte encoding
+     * @param key an encoded verify key
+     */
+    public VerifyKey(byte[] key) {
+        if (key.length != LENGTH) {
+            throw new IllegalArgumentException("verify key must be " + LENGTH + " bytes");
+        }
+
+        this.key = key.clone();
+    }
+
+    /**
+     * Retrieve the encoded key
+     * @return the 32 byte encoding of the key
+     */
+    public byte[] getBytes() {
+        return key.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        VerifyKey that = (VerifyKey) o;
+
+        return Arrays.equals(key, that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(key);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BatchResultTest extends ChlorideTest {
+    @Test
+    public void testEncryptAllAndDecryptAll() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        List<byte[]> plaintexts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            plaintexts.add(SecretStreamTest.randomBytes(i));
+        }
+
+        BatchResult encrypted = box.encryptAll(plaintexts);
+        List<byte[]> ciphertexts = new ArrayList<>();
+        for (int i = 0; i < encrypted.size(); i++) {
+            ciphertexts.add(encrypted.get(i));
+            assertThat(box.decrypt(encrypted.get(i)), equalTo(plaintexts.get(i)));
+        }
+
+        BatchResult decrypted = box.decryptAll(ciphertexts);
+        for (int i = 0; i < decrypted.size(); i++) {
+            assertThat(decrypted.get(i), equalTo(plaintexts.get(i)));
+        }
+    }
+
+    @Test
+    public void testFailuresReportedPerRecord() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        List<byte[]> ciphertexts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ciphertexts.add(box.encrypt(SecretStreamTest.randomBytes(16)));
+        }
+
+        ciphertexts.get(1)[20] ^= 1;
+        ciphertexts.set(3, new byte[3]);
+
+        BatchResult result = box.decryptAll(ciphertexts);
+        assertThat(result.getFailures(), equalTo(Arrays.asList(1, 3)));
+        assertThat(result.get(2), equalTo(SecretStreamTest.randomBytes(16)));
+    }
+
+    @Test
+    public void testBoxBatch() throws Exception {
+        KeyPair pair1 = KeyPair.generate();
+        KeyPair pair2 = KeyPair.generate();
+        Box box1 = new Box(pair1.getPrivateKey(), pair2.getPublicKey());
+        Box box2 = new Box(pair2.getPrivateKey(), pair1.getPublicKey());
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        BatchResult encrypted = box1.encryptAll(Collections.singletonList(message));
+        BatchResult decrypted = box2.decryptAll(Collections.singletonList(encrypted.get(0)));
+        assertThat(decrypted.get(0), equalTo(message));
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.Curve;
+import com.jtdowney.chloride.keys.KeyPair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BoxSessionTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testDuplexMessages() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession aliceSession = new BoxSession(alice, bob.getPublicKey());
+        BoxSession bobSession = new BoxSession(bob, alice.getPublicKey());
+        start(aliceSession, bobSession);
+
+        for (int i = 0; i < 10; i++) {
+            byte[] message = ("message " + i).getBytes("UTF-8");
+            byte[] ciphertext = aliceSession.encrypt(message);
+            assertThat(ciphertext.length, equalTo(aliceSession.outputSize(message.length)));
+            assertThat(bobSession.decrypt(ciphertext), equalTo(message));
+            assertThat(aliceSession.decrypt(bobSession.encrypt(message)), equalTo(message));
+        }
+    }
+
+    @Test
+    public void testDirectionsUseDifferentKeys() throws Exception {
+        KeyPair alice = KeyPair.generate(Curve.X25519);
+        KeyPair bob = KeyPair.generate(Curve.X25519);
+        BoxSession aliceSession = new BoxSession(alice, bob.getPublicKey());
+        BoxSession bobSession = new BoxSession(bob, alice.getPublicKey());
+        start(aliceSession, bobSession);
+        assertThat(aliceSession.encrypt(new byte[16]), not(equalTo(bobSession.encrypt(new byte[16]))));
+    }
+
+    @Test
+    public void testReplayRejected() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession aliceSession = new BoxSession(alice, bob.getPublicKey());
+        BoxSession bobSession = new BoxSession(bob, alice.getPublicKey());
+        start(aliceSession, bobSession);
+
+        byte[] ciphertext = aliceSession.encrypt("too many secrets".getBytes("UTF-8"));
+        bobSession.decrypt(ciphertext);
+        thrown.expect(ChlorideException.class);
+        thrown.expectMessage("message failed authentication or is out of order");
+        bobSession.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testReorderRejectedWithoutLosingState() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession aliceSession = new BoxSession(alice, bob.getPublicKey());
+        BoxSession bobSession = new BoxSession(bob, alice.getPublicKey());
+        start(aliceSession, bobSession);
+
+        byte[] first = aliceSession.encrypt("first".getBytes("UTF-8"));
+        byte[] second = aliceSession.encrypt("second".getBytes("UTF-8"));
+        try {
+            bobSession.decrypt(second);
+            fail("expected out of order message to be rejected");
+        } catch (ChlorideException e) {
+            assertThat(e.getMessage(), equalTo("message failed authentication or is out of order"));
+        }
+
+        assertThat(bobSession.decrypt(first), equalTo("first".getBytes("UTF-8")));
+        assertThat(bobSession.decrypt(second), equalTo("second".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testRekey() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession aliceSession = new BoxSession(alice, bob.getPublicKey(), 3);
+        BoxSession bobSession = new BoxSession(bob, alice.getPublicKey(), 3);
+        start(aliceSession, bobSession);
+        for (int i = 0; i < 10; i++) {
+            byte[] ciphertext = aliceSession.encrypt(new byte[8]);
+            assertThat(bobSession.decrypt(ciphertext), equalTo(new byte[8]));
+        }
+
+        BoxSession rekeyingSession = new BoxSession(alice, bob.getPublicKey(), 3);
+        BoxSession nonRekeyingSession = new BoxSession(bob, alice.getPublicKey());
+        start(rekeyingSession, nonRekeyingSession);
+        for (int i = 0; i < 3; i++) {
+            nonRekeyingSession.decrypt(rekeyingSession.encrypt(new byte[8]));
+        }
+
+        thrown.expect(ChlorideException.class);
+        nonRekeyingSession.decrypt(rekeyingSession.encrypt(new byte[8]));
+    }
+
+    @Test
+    public void testSessionsBetweenSameKeyPairsUseDifferentKeys() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession first = new BoxSession(alice, bob.getPublicKey());
+        start(first, new BoxSession(bob, alice.getPublicKey()));
+        BoxSession second = new BoxSession(alice, bob.getPublicKey());
+        start(second, new BoxSession(bob, alice.getPublicKey()));
+
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        assertThat(first.encrypt(message), not(equalTo(second.encrypt(message))));
+    }
+
+    @Test
+    public void testEncryptBeforeStartFails() throws Exception {
+        KeyPair alice = KeyPair.generate();
+        KeyPair bob = KeyPair.generate();
+        BoxSession session = new BoxSession(alice, bob.getPublicKey());
+        thrown.expect(IllegalStateException.class);
+        session.encrypt(new byte[8]);
+    }
+
+    private static void start(BoxSession a, BoxSession b) {
+        byte[] handshake = a.getHandshake();
+        a.start(b.getHandshake());
+        b.start(handshake);
+    }
+}
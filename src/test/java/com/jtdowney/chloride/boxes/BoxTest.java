@@ -23,13 +23,21 @@
 package com.jtdowney.chloride.boxes;
 
 import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.Curve;
 import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.PublicKey;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class BoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
     @Test
     public void testEncryptAndDecrypt() throws Exception {
         KeyPair pair1 = KeyPair.generate();
@@ -39,4 +47,49 @@ public class BoxTest extends ChlorideTest {
         byte[] ciphertext = box1.encrypt("too many secrets".getBytes("UTF-8"));
         assertThat(box2.decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
     }
+
+    @Test
+    public void testSharedKeyIsSymmetric() throws Exception {
+        KeyPair pair1 = KeyPair.generate();
+        KeyPair pair2 = KeyPair.generate();
+        Box box1 = new Box(pair1.getPrivateKey(), pair2.getPublicKey());
+        Box box2 = new Box(pair2.getPrivateKey(), pair1.getPublicKey());
+        assertThat(box1.sharedKey(), equalTo(box2.sharedKey()));
+    }
+
+    @Test
+    public void testPrecomputeIsReused() throws Exception {
+        KeyPair pair1 = KeyPair.generate();
+        KeyPair pair2 = KeyPair.generate();
+        Box box = new Box(pair1.getPrivateKey(), pair2.getPublicKey());
+        assertThat(box.precompute(), sameInstance(box.precompute()));
+    }
+
+    @Test
+    public void testX25519EncryptAndDecrypt() throws Exception {
+        KeyPair pair1 = KeyPair.generate(Curve.X25519);
+        KeyPair pair2 = KeyPair.generate(Curve.X25519);
+        Box box1 = new Box(pair1.getPrivateKey(), PublicKey.fromRawBytes(Curve.X25519, pair2.getPublicKey().getRawBytes()));
+        Box box2 = new Box(pair2.getPrivateKey(), pair1.getPublicKey());
+        byte[] ciphertext = box1.encrypt("too many secrets".getBytes("UTF-8"));
+        assertThat(box2.decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testMismatchedCurves() throws Exception {
+        thrown.expectMessage("keys are on different curves");
+        KeyPair pair1 = KeyPair.generate(Curve.P256);
+        KeyPair pair2 = KeyPair.generate(Curve.X25519);
+        new Box(pair1.getPrivateKey(), pair2.getPublicKey()).encrypt(new byte[1]);
+    }
+
+    @Test
+    public void testEncryptAsyncAndDecryptAsync() throws Exception {
+        KeyPair pair1 = KeyPair.generateAsync().get();
+        KeyPair pair2 = KeyPair.generateAsync().get();
+        Box box1 = new Box(pair1.getPrivateKey(), pair2.getPublicKey());
+        Box box2 = new Box(pair2.getPrivateKey(), pair1.getPublicKey());
+        byte[] ciphertext = box1.encryptAsync("too many secrets".getBytes("UTF-8")).get();
+        assertThat(box2.decryptAsync(ciphertext).get(), equalTo("too many secrets".getBytes("UTF-8")));
+    }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class CipherEngineTest extends ChlorideTest {
+    @Test
+    public void testDefaultPrefersJdk() throws Exception {
+        assertThat(CipherEngine.defaultEngine().getName(), equalTo("SunJCE"));
+    }
+
+    @Test
+    public void testEnginesShareWireFormat() throws Exception {
+        SecretKey key = SecretKey.generate();
+        CipherEngine[] engines = {CipherEngine.jdk(), CipherEngine.bouncyCastle(), CipherEngine.provider(new BouncyCastleProvider())};
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        for (CipherEngine encrypting : engines) {
+            byte[] ciphertext = new SecretBox(key, encrypting).encrypt(message);
+            for (CipherEngine decrypting : engines) {
+                assertThat(new SecretBox(key, decrypting).decrypt(ciphertext), equalTo(message));
+            }
+        }
+    }
+
+    @Test
+    public void testAvailability() throws Exception {
+        assertTrue(CipherEngine.bouncyCastle().isAvailable());
+        assertFalse(CipherEngine.provider("Missing").isAvailable());
+    }
+
+    @Test
+    public void testFastestIsAvailable() throws Exception {
+        assertTrue(CipherEngine.fastest().isAvailable());
+    }
+}
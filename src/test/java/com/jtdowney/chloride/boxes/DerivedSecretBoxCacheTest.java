@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DerivedSecretBoxCacheTest extends ChlorideTest {
+    @Test
+    public void testGetUsesDerivedKey() throws Exception {
+        SecretKey masterKey = SecretKey.generate();
+        DerivedSecretBoxCache cache = new DerivedSecretBoxCache(masterKey, "tenant", 10, 1, TimeUnit.HOURS);
+        byte[] ciphertext = cache.get(7).encrypt("too many secrets".getBytes("UTF-8"));
+        SecretBox box = new SecretBox(masterKey.deriveSubkey("tenant", 7));
+        assertThat(box.decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testHitsAndMisses() throws Exception {
+        DerivedSecretBoxCache cache = new DerivedSecretBoxCache(SecretKey.generate(), "tenant", 10, 1, TimeUnit.HOURS);
+        SecretBox box = cache.get(1);
+        assertThat(cache.get(1), sameInstance(box));
+        cache.get(2);
+        assertThat(cache.getHits(), equalTo(1L));
+        assertThat(cache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        DerivedSecretBoxCache cache = new DerivedSecretBoxCache(SecretKey.generate(), "tenant", 2, 1, TimeUnit.HOURS);
+        SecretBox box = cache.get(1);
+        cache.get(2);
+        cache.get(1);
+        cache.get(3);
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.get(1), sameInstance(box));
+        assertThat(cache.getMisses(), equalTo(3L));
+    }
+
+    @Test
+    public void testExpiresEntries() throws Exception {
+        DerivedSecretBoxCache cache = new DerivedSecretBoxCache(SecretKey.generate(), "tenant", 10, 1, TimeUnit.MILLISECONDS);
+        SecretBox box = cache.get(1);
+        Thread.sleep(10);
+        assertThat(cache.get(1), not(sameInstance(box)));
+        assertThat(cache.getMisses(), equalTo(2L));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class GcmSivSecretBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testRandomizedEncryptAndDecrypt() throws Exception {
+        GcmSivSecretBox box = new GcmSivSecretBox(SecretKey.generate());
+        byte[] plaintext = "too many secrets".getBytes("UTF-8");
+        byte[] ciphertext = box.encrypt(plaintext);
+        assertThat(ciphertext.length, equalTo(box.outputSize(plaintext.length)));
+        assertThat(ciphertext[0], equalTo(GcmSivSecretBox.RANDOMIZED_ALGORITHM_ID));
+        assertThat(box.encrypt(plaintext), not(equalTo(ciphertext)));
+        assertThat(box.decrypt(ciphertext), equalTo(plaintext));
+    }
+
+    @Test
+    public void testDeterministicEncryptAndDecrypt() throws Exception {
+        SecretKey key = SecretKey.generate();
+        GcmSivSecretBox box = new GcmSivSecretBox(key, true);
+        byte[] plaintext = "too many secrets".getBytes("UTF-8");
+        byte[] ciphertext = box.encrypt(plaintext);
+        assertThat(ciphertext.length, equalTo(1 + plaintext.length + 16));
+        assertThat(ciphertext[0], equalTo(GcmSivSecretBox.DETERMINISTIC_ALGORITHM_ID));
+        assertThat(box.encrypt(plaintext), equalTo(ciphertext));
+        assertThat(box.encrypt("too many secretz".getBytes("UTF-8")), not(equalTo(ciphertext)));
+        assertThat(new GcmSivSecretBox(key).decrypt(ciphertext), equalTo(plaintext));
+    }
+
+    @Test
+    public void testEmptyPlaintext() throws Exception {
+        GcmSivSecretBox box = new GcmSivSecretBox(SecretKey.generate(), true);
+        assertThat(box.decrypt(box.encrypt(new byte[0])), equalTo(new byte[0]));
+    }
+
+    @Test
+    public void testTamperedCiphertext() throws Exception {
+        thrown.expect(ChlorideException.class);
+        GcmSivSecretBox box = new GcmSivSecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        ciphertext[ciphertext.length - 1] ^= 1;
+        box.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testChangedAlgorithmId() throws Exception {
+        thrown.expect(ChlorideException.class);
+        GcmSivSecretBox box = new GcmSivSecretBox(SecretKey.generate(), true);
+        byte[] ciphertext = box.encrypt(new byte[32]);
+        ciphertext[0] = GcmSivSecretBox.RANDOMIZED_ALGORITHM_ID;
+        box.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testUnknownAlgorithmId() throws Exception {
+        thrown.expectMessage("unsupported algorithm identifier");
+        GcmSivSecretBox box = new GcmSivSecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt(new byte[32]);
+        ciphertext[0] = XChaChaSecretBox.ALGORITHM_ID;
+        box.decrypt(ciphertext);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.PublicKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MultiBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        KeyPair sender = KeyPair.generate();
+        List<KeyPair> recipients = new ArrayList<>();
+        List<PublicKey> publicKeys = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            KeyPair pair = KeyPair.generate();
+            recipients.add(pair);
+            publicKeys.add(pair.getPublicKey());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MultiBox box = new MultiBox(sender.getPrivateKey(), sender.getPublicKey(), executor);
+            byte[] ciphertext = box.encrypt(publicKeys, "too many secrets".getBytes("UTF-8"));
+            for (KeyPair recipient : recipients) {
+                MultiBox recipientBox = new MultiBox(recipient.getPrivateKey(), recipient.getPublicKey());
+                assertThat(recipientBox.decrypt(sender.getPublicKey(), ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testNotARecipient() throws Exception {
+        thrown.expectMessage("no slot for this recipient");
+        KeyPair sender = KeyPair.generate();
+        KeyPair recipient = KeyPair.generate();
+        KeyPair other = KeyPair.generate();
+        byte[] ciphertext = new MultiBox(sender.getPrivateKey(), sender.getPublicKey())
+                .encrypt(Collections.singletonList(recipient.getPublicKey()), "too many secrets".getBytes("UTF-8"));
+        new MultiBox(other.getPrivateKey(), other.getPublicKey()).decrypt(sender.getPublicKey(), ciphertext);
+    }
+
+    @Test
+    public void testWrappedKeyIsNotABoxMessage() throws Exception {
+        KeyPair sender = KeyPair.generate();
+        KeyPair recipient = KeyPair.generate();
+        byte[] ciphertext = new MultiBox(sender.getPrivateKey(), sender.getPublicKey())
+                .encrypt(Collections.singletonList(recipient.getPublicKey()), "too many secrets".getBytes("UTF-8"));
+        byte[] wrappedKey = Arrays.copyOfRange(ciphertext, 4 + 8, 4 + 8 + 60);
+        thrown.expect(ChlorideException.class);
+        new Box(recipient.getPrivateKey(), sender.getPublicKey()).decrypt(wrappedKey);
+    }
+}
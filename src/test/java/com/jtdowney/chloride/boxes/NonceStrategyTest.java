@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class NonceStrategyTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testCounterIsUnique() throws Exception {
+        assertUnique(NonceStrategy.counter());
+    }
+
+    @Test
+    public void testBufferedRandomIsUnique() throws Exception {
+        assertUnique(NonceStrategy.bufferedRandom());
+    }
+
+    @Test
+    public void testCounterLimit() throws Exception {
+        thrown.expectMessage("nonce limit reached");
+        SecretBox box = new SecretBox(SecretKey.generate(), NonceStrategy.counter(2));
+        box.encrypt(new byte[1]);
+        box.encrypt(new byte[1]);
+        box.encrypt(new byte[1]);
+    }
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        SecretKey key = SecretKey.generate();
+        for (NonceStrategy strategy : new NonceStrategy[]{NonceStrategy.counter(), NonceStrategy.bufferedRandom()}) {
+            SecretBox box = new SecretBox(key, strategy);
+            byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+            assertThat(new SecretBox(key).decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+        }
+    }
+
+    private void assertUnique(NonceStrategy strategy) throws Exception {
+        byte[] nonces = new byte[NonceStrategy.NONCE_LENGTH * 1000];
+        strategy.next(nonces, 0, 500);
+        for (int i = 500; i < 1000; i++) {
+            strategy.next(nonces, i * NonceStrategy.NONCE_LENGTH, 1);
+        }
+
+        Set<ByteBuffer> seen = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            seen.add(ByteBuffer.wrap(nonces, i * NonceStrategy.NONCE_LENGTH, NonceStrategy.NONCE_LENGTH));
+        }
+
+        assertThat(seen.size(), equalTo(1000));
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ParallelSecretBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        try (ParallelSecretBox box = new ParallelSecretBox(SecretKey.generate(), 4)) {
+            for (int length : new int[]{0, 16, 3 * 1024 * 1024 + 7}) {
+                byte[] plaintext = SecretStreamTest.randomBytes(length);
+                assertThat(box.decrypt(box.encrypt(plaintext)), equalTo(plaintext));
+            }
+        }
+    }
+
+    @Test
+    public void testCompatibleWithStreams() throws Exception {
+        SecretKey key = SecretKey.generate();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            ParallelSecretBox box = new ParallelSecretBox(key, executor, 3, 1000);
+            byte[] plaintext = SecretStreamTest.randomBytes(25000);
+            assertThat(SecretStreamTest.decrypt(new SecretBox(key), box.encrypt(plaintext)), equalTo(plaintext));
+            assertThat(box.decrypt(SecretStreamTest.encrypt(new SecretBox(key), plaintext, 1000)), equalTo(plaintext));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testMalleabilityProtection() throws Exception {
+        thrown.expect(ChlorideException.class);
+        try (ParallelSecretBox box = new ParallelSecretBox(SecretKey.generate(), 2)) {
+            byte[] ciphertext = box.encrypt(SecretStreamTest.randomBytes(3 * 1024 * 1024));
+            ciphertext[2 * 1024 * 1024] ^= 1;
+            box.decrypt(ciphertext);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.Curve;
+import com.jtdowney.chloride.keys.KeyPair;
+import com.jtdowney.chloride.keys.KeyPairPool;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SealedBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        for (Curve curve : Curve.values()) {
+            KeyPair recipient = KeyPair.generate(curve);
+            byte[] ciphertext = new SealedBox(recipient.getPublicKey()).encrypt("too many secrets".getBytes("UTF-8"));
+            assertThat(new SealedBox(recipient.getPrivateKey()).decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+        }
+    }
+
+    @Test
+    public void testEncryptWithPool() throws Exception {
+        KeyPair recipient = KeyPair.generate(Curve.X25519);
+        try (KeyPairPool pool = new KeyPairPool(Curve.X25519, 4)) {
+            SealedBox box = new SealedBox(recipient.getPublicKey(), pool);
+            byte[] ciphertext1 = box.encrypt("too many secrets".getBytes("UTF-8"));
+            byte[] ciphertext2 = box.encrypt("too many secrets".getBytes("UTF-8"));
+            assertThat(new SealedBox(recipient.getPrivateKey()).decrypt(ciphertext2), equalTo("too many secrets".getBytes("UTF-8")));
+            assertThat(Arrays.copyOf(ciphertext1, 32), not(equalTo(Arrays.copyOf(ciphertext2, 32))));
+        }
+    }
+
+    @Test
+    public void testWrongRecipient() throws Exception {
+        thrown.expect(ChlorideException.class);
+        byte[] ciphertext = new SealedBox(KeyPair.generate().getPublicKey()).encrypt("too many secrets".getBytes("UTF-8"));
+        new SealedBox(KeyPair.generate().getPrivateKey()).decrypt(ciphertext);
+    }
+}
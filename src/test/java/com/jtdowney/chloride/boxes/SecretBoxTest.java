@@ -22,13 +22,27 @@
 
 package com.jtdowney.chloride.boxes;
 
+import com.jtdowney.chloride.ChlorideException;
 import com.jtdowney.chloride.ChlorideTest;
 import com.jtdowney.chloride.keys.SecretKey;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
 
 public class SecretBoxTest extends ChlorideTest {
@@ -46,9 +60,137 @@ public class SecretBoxTest extends ChlorideTest {
     @Test
     public void testMalleabilityProtection() throws Exception {
         thrown.expectMessage("mac check in GCM failed");
+        SecretBox box = new SecretBox(SecretKey.generate(), CipherEngine.bouncyCastle());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        ciphertext[15] -= 1;
+        box.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testMalleabilityProtectionWithDefaultEngine() throws Exception {
+        thrown.expect(ChlorideException.class);
         SecretBox box = new SecretBox(SecretKey.generate());
         byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
         ciphertext[15] -= 1;
         box.decrypt(ciphertext);
     }
+
+    @Test
+    public void testEncryptAndDecryptWithOffsets() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = "xxtoo many secretsxx".getBytes("UTF-8");
+        byte[] ciphertext = new byte[box.outputSize(16) + 4];
+        int written = box.encrypt(plaintext, 2, 16, ciphertext, 4);
+        assertThat(written, equalTo(box.outputSize(16)));
+
+        byte[] decrypted = new byte[18];
+        int length = box.decrypt(ciphertext, 4, written, decrypted, 2);
+        assertThat(length, equalTo(16));
+        assertThat(new String(decrypted, 2, length, "UTF-8"), equalTo("too many secrets"));
+    }
+
+    @Test
+    public void testEncryptAndDecryptDirectBuffers() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        ByteBuffer plaintext = ByteBuffer.allocateDirect(message.length);
+        plaintext.put(message).flip();
+        ByteBuffer ciphertext = ByteBuffer.allocateDirect(box.outputSize(message.length));
+        box.encrypt(plaintext, ciphertext);
+        ciphertext.flip();
+
+        ByteBuffer decrypted = ByteBuffer.allocateDirect(box.plaintextSize(ciphertext.remaining()));
+        box.decrypt(ciphertext, decrypted);
+        decrypted.flip();
+        byte[] result = new byte[decrypted.remaining()];
+        decrypted.get(result);
+        assertThat(result, equalTo(message));
+    }
+
+    @Test
+    public void testByteBufferInteroperatesWithArrays() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        ByteBuffer ciphertext = ByteBuffer.allocate(box.outputSize(message.length));
+        box.encrypt(ByteBuffer.wrap(message), ciphertext);
+        assertThat(box.decrypt(ciphertext.array()), equalTo(message));
+    }
+
+    @Test
+    public void testEncryptShortBuffer() throws Exception {
+        thrown.expect(ChlorideException.class);
+        SecretBox box = new SecretBox(SecretKey.generate());
+        box.encrypt(new byte[16], 0, 16, new byte[box.outputSize(16) - 1], 0);
+    }
+
+    @Test
+    public void testSharedAcrossThreads() throws Exception {
+        final SecretBox box = new SecretBox(SecretKey.generate());
+        final byte[] message = "too many secrets".getBytes("UTF-8");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() throws Exception {
+                        return box.decrypt(box.encrypt(message));
+                    }
+                }));
+            }
+
+            for (Future<byte[]> result : results) {
+                assertThat(result.get(), equalTo(message));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testEncryptAsyncSmallPayloadRunsInline() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        CompletableFuture<byte[]> future = box.encryptAsync("too many secrets".getBytes("UTF-8"));
+        assertThat(future.isDone(), is(true));
+        assertThat(box.decrypt(future.get()), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testEncryptAsyncLargePayloadOnExecutor() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = new byte[1024 * 1024];
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            byte[] ciphertext = box.encryptAsync(plaintext, executor).get();
+            assertThat(box.decryptAsync(ciphertext, executor).get(), equalTo(plaintext));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDecryptAsyncFailure() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt(new byte[64 * 1024]);
+        ciphertext[ciphertext.length - 1] ^= 1;
+        try {
+            box.decryptAsync(ciphertext).get();
+            throw new AssertionError("expected decryption to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test
+    public void testEncryptAsyncRejected() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        try {
+            box.encryptAsync(new byte[64 * 1024], task -> {
+                throw new RejectedExecutionException("queue full");
+            }).get();
+            throw new AssertionError("expected encryption to be rejected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(RejectedExecutionException.class));
+        }
+    }
 }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SecretFilesTest extends ChlorideTest {
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("chloride");
+    }
+
+    @After
+    public void deleteDirectory() throws Exception {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        for (int length : new int[]{0, 65536, 200000}) {
+            byte[] plaintext = SecretStreamTest.randomBytes(length);
+            Path source = Files.write(directory.resolve("plain"), plaintext);
+            box.encryptFile(source, directory.resolve("encrypted"));
+            box.decryptFile(directory.resolve("encrypted"), directory.resolve("decrypted"));
+            assertThat(Files.readAllBytes(directory.resolve("decrypted")), equalTo(plaintext));
+        }
+    }
+
+    @Test
+    public void testCompatibleWithStreams() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(100000);
+        Path source = Files.write(directory.resolve("plain"), plaintext);
+        box.encryptFile(source, directory.resolve("encrypted"));
+        assertThat(SecretStreamTest.decrypt(box, Files.readAllBytes(directory.resolve("encrypted"))), equalTo(plaintext));
+    }
+
+    @Test
+    public void testReportsProgress() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        Path source = Files.write(directory.resolve("plain"), SecretStreamTest.randomBytes(1000));
+        final AtomicLong processed = new AtomicLong();
+        box.encryptFile(source, directory.resolve("encrypted"), new ProgressListener() {
+            @Override
+            public void progress(long done, long total) {
+                processed.set(done);
+            }
+        });
+
+        assertThat(processed.get(), equalTo(1000L));
+    }
+
+    @Test
+    public void testFailedDecryptLeavesNoDestination() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        Path source = Files.write(directory.resolve("plain"), SecretStreamTest.randomBytes(1000));
+        box.encryptFile(source, directory.resolve("encrypted"));
+        byte[] ciphertext = Files.readAllBytes(directory.resolve("encrypted"));
+        ciphertext[ciphertext.length - 1] ^= 1;
+        Files.write(directory.resolve("encrypted"), ciphertext);
+
+        try {
+            box.decryptFile(directory.resolve("encrypted"), directory.resolve("decrypted"));
+            fail();
+        } catch (ChlorideException e) {
+            assertFalse(Files.exists(directory.resolve("decrypted")));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SecretKeyringTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testDecryptAfterRotation() throws Exception {
+        SecretKeyring keyring = new SecretKeyring();
+        keyring.add(1, SecretKey.generate());
+        keyring.setPrimary(1);
+        byte[] oldCiphertext = keyring.encrypt("too many secrets".getBytes("UTF-8"));
+
+        keyring.add(2, SecretKey.generate());
+        keyring.setPrimary(2);
+        byte[] newCiphertext = keyring.encrypt("too many secrets".getBytes("UTF-8"));
+
+        assertThat(keyring.getPrimaryId(), equalTo(2));
+        assertThat(keyring.decrypt(oldCiphertext), equalTo("too many secrets".getBytes("UTF-8")));
+        assertThat(keyring.decrypt(newCiphertext), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testRetiredKey() throws Exception {
+        thrown.expectMessage("unknown key id 1");
+        SecretKeyring keyring = new SecretKeyring();
+        keyring.add(1, SecretKey.generate());
+        keyring.setPrimary(1);
+        byte[] ciphertext = keyring.encrypt("too many secrets".getBytes("UTF-8"));
+
+        keyring.add(2, SecretKey.generate());
+        keyring.setPrimary(2);
+        keyring.retire(1);
+        keyring.decrypt(ciphertext);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCannotRetirePrimary() throws Exception {
+        SecretKeyring keyring = new SecretKeyring();
+        keyring.add(1, SecretKey.generate());
+        keyring.setPrimary(1);
+        keyring.retire(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateKeyId() throws Exception {
+        SecretKeyring keyring = new SecretKeyring();
+        keyring.add(1, SecretKey.generate());
+        keyring.add(1, SecretKey.generate());
+    }
+
+    @Test
+    public void testConcurrentPromoteAndRetireKeepsPrimary() throws Exception {
+        final SecretKeyring keyring = new SecretKeyring();
+        keyring.add(0, SecretKey.generate());
+        keyring.setPrimary(0);
+        for (int round = 1; round <= 200; round++) {
+            final int id = round;
+            keyring.add(id, SecretKey.generate());
+            final CountDownLatch start = new CountDownLatch(1);
+            Thread promoter = new Thread(() -> {
+                try {
+                    start.await();
+                    keyring.setPrimary(id);
+                } catch (InterruptedException | IllegalArgumentException e) {
+                    // lost the race to retire
+                }
+            });
+            Thread retirer = new Thread(() -> {
+                try {
+                    start.await();
+                    keyring.retire(id);
+                } catch (InterruptedException | IllegalStateException e) {
+                    // lost the race to promote
+                }
+            });
+
+            promoter.start();
+            retirer.start();
+            start.countDown();
+            promoter.join();
+            retirer.join();
+            assertTrue(keyring.contains(keyring.getPrimaryId()));
+        }
+    }
+}
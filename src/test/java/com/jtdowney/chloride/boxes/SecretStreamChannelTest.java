@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+public class SecretStreamChannelTest extends ChlorideTest {
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        byte[] ciphertext = write(box, plaintext, false, 1024);
+        assertThat(SecretStreamTest.decrypt(box, ciphertext), equalTo(plaintext));
+        assertThat(read(box.decryptingChannel(Channels.newChannel(new ByteArrayInputStream(ciphertext))), 100), equalTo(plaintext));
+    }
+
+    @Test
+    public void testNonBlockingChannels() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        byte[] ciphertext = write(box, plaintext, true, 1024);
+        assertThat(SecretStreamTest.decrypt(box, ciphertext), equalTo(plaintext));
+        assertThat(read(box.decryptingChannel(new TrickleChannel(ciphertext)), 333), equalTo(plaintext));
+    }
+
+    @Test
+    public void testDirectBuffers() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(5000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (WritableByteChannel channel = box.encryptingChannel(Channels.newChannel(output), 1000)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length);
+            buffer.put(plaintext).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        ReadableByteChannel channel = box.decryptingChannel(Channels.newChannel(new ByteArrayInputStream(output.toByteArray())));
+        ByteBuffer buffer = ByteBuffer.allocateDirect(plaintext.length + 1);
+        while (channel.read(buffer) != -1) {
+            assertThat(buffer.position() <= plaintext.length, equalTo(true));
+        }
+
+        byte[] result = new byte[buffer.flip().remaining()];
+        buffer.get(result);
+        assertThat(result, equalTo(plaintext));
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = write(box, new byte[0], false, 1024);
+        assertThat(read(box.decryptingChannel(Channels.newChannel(new ByteArrayInputStream(ciphertext))), 10), equalTo(new byte[0]));
+    }
+
+    @Test
+    public void testTamperedSegmentFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        ciphertext[SecretStream.HEADER_LENGTH + 10] ^= 1;
+        try {
+            read(box.decryptingChannel(Channels.newChannel(new ByteArrayInputStream(ciphertext))), 100);
+            throw new AssertionError("expected decryption to fail");
+        } catch (IOException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test
+    public void testTruncatedStreamFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        byte[] truncated = Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 1024 + 16);
+        try {
+            read(box.decryptingChannel(Channels.newChannel(new ByteArrayInputStream(truncated))), 100);
+            throw new AssertionError("expected decryption to fail");
+        } catch (IOException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test
+    public void testCloseLeavesUnfinishedChannelOpen() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        WritableByteChannel stalled = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) {
+                return 0;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        EncryptingWritableByteChannel channel = box.encryptingChannel(stalled);
+        assertThat(channel.finish(), equalTo(false));
+        try {
+            channel.close();
+            throw new AssertionError("expected close to fail");
+        } catch (IOException e) {
+            assertThat(channel.isOpen(), equalTo(true));
+        }
+    }
+
+    private static byte[] write(SecretBox box, byte[] plaintext, boolean trickle, int segmentSize) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TrickleChannel trickleChannel = new TrickleChannel(null);
+        WritableByteChannel target = trickle ? trickleChannel : Channels.newChannel(output);
+        EncryptingWritableByteChannel channel = box.encryptingChannel(target, segmentSize);
+        for (int offset = 0; offset < plaintext.length; offset += 777) {
+            ByteBuffer buffer = ByteBuffer.wrap(plaintext, offset, Math.min(777, plaintext.length - offset));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        while (!channel.finish()) {
+            // retry until the trickle channel takes the final segment
+        }
+
+        channel.close();
+        return trickle ? trickleChannel.output.toByteArray() : output.toByteArray();
+    }
+
+    private static byte[] read(ReadableByteChannel channel, int bufferSize) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (channel.read(buffer) != -1) {
+            output.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+
+        channel.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * Channel that moves at most a few bytes per call and returns 0 on every other call, like a
+     * non-blocking socket under load
+     */
+    private static final class TrickleChannel implements ReadableByteChannel, WritableByteChannel {
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private final byte[] input;
+        private int position;
+        private boolean stall;
+
+        private TrickleChannel(byte[] input) {
+            this.input = input;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            stall = !stall;
+            if (position == input.length) {
+                return -1;
+            } else if (stall) {
+                return 0;
+            }
+
+            int count = Math.min(Math.min(dst.remaining(), 100), input.length - position);
+            dst.put(input, position, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            stall = !stall;
+            if (stall) {
+                return 0;
+            }
+
+            int count = Math.min(src.remaining(), 100);
+            byte[] bytes = new byte[count];
+            src.get(bytes);
+            output.write(bytes, 0, count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+
+public class SecretStreamProcessorTest extends ChlorideTest {
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        byte[] ciphertext = run(box.encryptingProcessor(1024), plaintext, 333);
+        assertThat(ciphertext.length, equalTo((int) SecretStream.ciphertextSize(plaintext.length, 1024)));
+        assertThat(run(box.decryptingProcessor(), ciphertext, 777), equalTo(plaintext));
+    }
+
+    @Test
+    public void testCompatibleWithStreams() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(5000);
+        assertThat(SecretStreamTest.decrypt(box, run(box.encryptingProcessor(1000), plaintext, 1000)), equalTo(plaintext));
+        assertThat(run(box.decryptingProcessor(), SecretStreamTest.encrypt(box, plaintext, 1000), 100), equalTo(plaintext));
+    }
+
+    @Test
+    public void testEmptyInput() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = run(box.encryptingProcessor(), new byte[0], 1);
+        assertThat(run(box.decryptingProcessor(), ciphertext, 5), equalTo(new byte[0]));
+    }
+
+    @Test
+    public void testTamperedSegmentFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = run(box.encryptingProcessor(1024), SecretStreamTest.randomBytes(4096), 4096);
+        ciphertext[ciphertext.length - 1] ^= 1;
+        try {
+            run(box.decryptingProcessor(), ciphertext, 100);
+            throw new AssertionError("expected decryption to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test
+    public void testTruncatedStreamFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = run(box.encryptingProcessor(1024), SecretStreamTest.randomBytes(4096), 4096);
+        try {
+            run(box.decryptingProcessor(), Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 1040), 100);
+            throw new AssertionError("expected decryption to fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test
+    public void testRespectsDemand() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        Flow.Processor<ByteBuffer, ByteBuffer> processor = box.encryptingProcessor(16);
+        final AtomicInteger received = new AtomicInteger();
+        final Flow.Subscription[] subscription = new Flow.Subscription[1];
+        processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+                s.request(2);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                received.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        final AtomicInteger upstreamRequested = new AtomicInteger();
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                upstreamRequested.addAndGet((int) n);
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        processor.onNext(ByteBuffer.wrap(new byte[1024]));
+
+        assertThat(received.get(), equalTo(2));
+        assertThat(upstreamRequested.get(), equalTo(1));
+        subscription[0].request(3);
+        assertThat(received.get(), equalTo(5));
+    }
+
+    private static byte[] run(Flow.Processor<ByteBuffer, ByteBuffer> processor, byte[] input, int chunkSize) throws Exception {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                byte[] bytes = new byte[item.remaining()];
+                item.get(bytes);
+                output.write(bytes, 0, bytes.length);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                result.complete(output.toByteArray());
+            }
+        });
+
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int offset = 0; offset < input.length; offset += chunkSize) {
+                publisher.submit(ByteBuffer.wrap(Arrays.copyOfRange(input, offset, Math.min(input.length, offset + chunkSize))));
+            }
+        }
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+}
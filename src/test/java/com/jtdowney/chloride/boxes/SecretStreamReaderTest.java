@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SecretStreamReaderTest extends ChlorideTest {
+    private Path file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = Files.createTempFile("chloride", ".enc");
+    }
+
+    @After
+    public void deleteFile() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testDecryptRangeFromBytes() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        byte[] ciphertext = SecretStreamTest.encrypt(box, plaintext, 1024);
+        for (int[] range : new int[][]{{0, 0}, {0, 10000}, {1000, 100}, {1020, 2000}, {9999, 1}, {10000, 0}}) {
+            assertThat(box.decryptRange(ciphertext, range[0], range[1]), equalTo(Arrays.copyOfRange(plaintext, range[0], range[0] + range[1])));
+        }
+    }
+
+    @Test
+    public void testDecryptRangeFromChannel() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        Files.write(file, SecretStreamTest.encrypt(box, plaintext, 1024));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int[] range : new int[][]{{0, 0}, {0, 10000}, {1000, 100}, {1020, 2000}, {9999, 1}}) {
+                assertThat(box.decryptRange(channel, range[0], range[1]), equalTo(Arrays.copyOfRange(plaintext, range[0], range[0] + range[1])));
+            }
+        }
+    }
+
+    @Test
+    public void testDecryptRangeSkipsOtherSegments() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(4096);
+        byte[] ciphertext = SecretStreamTest.encrypt(box, plaintext, 1024);
+        ciphertext[SecretStream.HEADER_LENGTH + 2 * 1040 + 5] ^= 1;
+        assertThat(box.decryptRange(ciphertext, 100, 1000), equalTo(Arrays.copyOfRange(plaintext, 100, 1100)));
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testDecryptRangeTamperedSegmentFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        ciphertext[SecretStream.HEADER_LENGTH + 1040 + 5] ^= 1;
+        box.decryptRange(ciphertext, 1500, 10);
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testTruncatedAtSegmentBoundaryFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        byte[] truncated = Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 2 * 1040);
+        box.decryptRange(truncated, 1500, 10);
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testTruncatedFailsForRangeInFirstSegment() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        byte[] truncated = Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 2 * 1040);
+        box.decryptRange(truncated, 0, 10);
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testRangeOutOfBounds() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(100), 1024);
+        box.decryptRange(ciphertext, 50, 51);
+    }
+
+    @Test
+    public void testSeekableChannel() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        Files.write(file, SecretStreamTest.encrypt(box, plaintext, 1024));
+        try (SeekableByteChannel channel = box.decryptingSeekableChannel(FileChannel.open(file, StandardOpenOption.READ))) {
+            assertThat(channel.size(), equalTo(10000L));
+
+            ByteBuffer buffer = ByteBuffer.allocate(3000);
+            channel.position(5000);
+            assertThat(channel.read(buffer), equalTo(3000));
+            assertThat(buffer.array(), equalTo(Arrays.copyOfRange(plaintext, 5000, 8000)));
+            assertThat(channel.position(), equalTo(8000L));
+
+            buffer.clear();
+            assertThat(channel.read(buffer), equalTo(2000));
+            assertThat(channel.read(buffer), equalTo(-1));
+
+            buffer.clear();
+            channel.position(0);
+            assertThat(channel.read(buffer), equalTo(3000));
+            assertThat(buffer.array(), equalTo(Arrays.copyOfRange(plaintext, 0, 3000)));
+        }
+    }
+
+    @Test
+    public void testSeekableChannelTamperedSegmentFails() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        ciphertext[SecretStream.HEADER_LENGTH + 5] ^= 1;
+        Files.write(file, ciphertext);
+        try (SeekableByteChannel channel = box.decryptingSeekableChannel(FileChannel.open(file, StandardOpenOption.READ))) {
+            channel.read(ByteBuffer.allocate(10));
+            fail("expected decryption to fail");
+        } catch (IOException e) {
+            assertThat(e.getCause(), instanceOf(ChlorideException.class));
+        }
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testSeekableChannelTruncatedFailsOnOpen() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(4096), 1024);
+        Files.write(file, Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 2 * 1040));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            box.decryptingSeekableChannel(channel);
+        }
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testOverflowingOffsetFromBytes() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(100), 1024);
+        box.decryptRange(ciphertext, Long.MAX_VALUE - 1, 10);
+    }
+
+    @Test(expected = ChlorideException.class)
+    public void testOverflowingOffsetFromChannel() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        Files.write(file, SecretStreamTest.encrypt(box, SecretStreamTest.randomBytes(100), 1024));
+        try (SeekableByteChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            box.decryptRange(channel, Long.MAX_VALUE - 1, 10);
+        }
+    }
+
+    @Test
+    public void testDecryptRangesFromOneChannel() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = SecretStreamTest.randomBytes(10000);
+        Files.write(file, SecretStreamTest.encrypt(box, plaintext, 1024));
+        try (DecryptingSeekableByteChannel channel = box.decryptingSeekableChannel(FileChannel.open(file, StandardOpenOption.READ))) {
+            assertThat(channel.decryptRange(5000, 3000), equalTo(Arrays.copyOfRange(plaintext, 5000, 8000)));
+            assertThat(channel.decryptRange(0, 10), equalTo(Arrays.copyOfRange(plaintext, 0, 10)));
+            assertThat(channel.position(), equalTo(0L));
+            try {
+                channel.decryptRange(Long.MAX_VALUE - 1, 10);
+                fail("expected range past the end to fail");
+            } catch (ChlorideException e) {
+                assertThat(e.getMessage(), equalTo("range extends past the end of the plaintext"));
+            }
+        }
+    }
+}
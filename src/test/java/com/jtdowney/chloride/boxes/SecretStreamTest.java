@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SecretStreamTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        for (int length : new int[]{0, 1, 99, 100, 101, 1000}) {
+            byte[] plaintext = randomBytes(length);
+            byte[] ciphertext = encrypt(box, plaintext, 100);
+            assertThat(ciphertext.length, equalTo((int) SecretStream.ciphertextSize(length, 100)));
+            assertThat(decrypt(box, ciphertext), equalTo(plaintext));
+        }
+    }
+
+    @Test
+    public void testDefaultSegmentSize() throws Exception {
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] plaintext = randomBytes(200000);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OutputStream stream = box.encryptingOutputStream(output);
+        stream.write(plaintext);
+        stream.close();
+        assertThat(decrypt(box, output.toByteArray()), equalTo(plaintext));
+    }
+
+    @Test
+    public void testTruncationDetected() throws Exception {
+        thrown.expect(IOException.class);
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = encrypt(box, randomBytes(1000), 100);
+        decrypt(box, Arrays.copyOf(ciphertext, SecretStream.HEADER_LENGTH + 2 * 116));
+    }
+
+    @Test
+    public void testReorderingDetected() throws Exception {
+        thrown.expect(IOException.class);
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = encrypt(box, randomBytes(1000), 100);
+        byte[] segment = Arrays.copyOfRange(ciphertext, SecretStream.HEADER_LENGTH, SecretStream.HEADER_LENGTH + 116);
+        System.arraycopy(ciphertext, SecretStream.HEADER_LENGTH + 116, ciphertext, SecretStream.HEADER_LENGTH, 116);
+        System.arraycopy(segment, 0, ciphertext, SecretStream.HEADER_LENGTH + 116, 116);
+        decrypt(box, ciphertext);
+    }
+
+    @Test
+    public void testHeaderTamperingDetected() throws Exception {
+        thrown.expect(IOException.class);
+        SecretBox box = new SecretBox(SecretKey.generate());
+        byte[] ciphertext = encrypt(box, randomBytes(10), 100);
+        ciphertext[10] ^= 1;
+        decrypt(box, ciphertext);
+    }
+
+    static byte[] encrypt(SecretBox box, byte[] plaintext, int segmentSize) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OutputStream stream = box.encryptingOutputStream(output, segmentSize);
+        for (int i = 0; i < plaintext.length; i += 37) {
+            stream.write(plaintext, i, Math.min(37, plaintext.length - i));
+        }
+
+        stream.close();
+        return output.toByteArray();
+    }
+
+    static byte[] decrypt(SecretBox box, byte[] ciphertext) throws Exception {
+        InputStream stream = box.decryptingInputStream(new ByteArrayInputStream(ciphertext));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[53];
+        int length;
+        while ((length = stream.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+
+        return output.toByteArray();
+    }
+
+    static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
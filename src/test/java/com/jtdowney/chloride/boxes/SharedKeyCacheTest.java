@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.KeyPair;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class SharedKeyCacheTest extends ChlorideTest {
+    @Test
+    public void testCompatibleWithBox() throws Exception {
+        KeyPair server = KeyPair.generate();
+        KeyPair client = KeyPair.generate();
+        SharedKeyCache cache = new SharedKeyCache(server.getPrivateKey(), 8);
+        Box box = new Box(client.getPrivateKey(), server.getPublicKey());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        assertThat(cache.get(client.getPublicKey()).decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testReusesSharedKey() throws Exception {
+        KeyPair server = KeyPair.generate();
+        KeyPair client = KeyPair.generate();
+        SharedKeyCache cache = new SharedKeyCache(server.getPrivateKey(), 8);
+        assertThat(cache.get(client.getPublicKey()), sameInstance(cache.get(client.getPublicKey())));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        KeyPair server = KeyPair.generate();
+        SharedKeyCache cache = new SharedKeyCache(server.getPrivateKey(), 2);
+        for (int i = 0; i < 3; i++) {
+            cache.get(KeyPair.generate().getPublicKey());
+        }
+
+        assertThat(cache.size(), equalTo(2));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SigningKey;
+import com.jtdowney.chloride.keys.SigningKeyPair;
+import com.jtdowney.chloride.keys.VerifyKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class SignBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testRfc8032Vector() throws Exception {
+        // RFC 8032 section 7.1, test 2
+        SigningKey signingKey = new SigningKey(Hex.decode("4ccd089b28ff96da9db6c346ec114e0f5b8a319f35aba624da8cf6ed4fb8a6fb"));
+        assertThat(signingKey.getVerifyKey().getBytes(), equalTo(Hex.decode("3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c")));
+
+        byte[] signature = new SignBox(signingKey).sign(Hex.decode("72"));
+        assertThat(signature, equalTo(Hex.decode("92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00")));
+    }
+
+    @Test
+    public void testSignAndVerify() throws Exception {
+        SigningKeyPair pair = SigningKeyPair.generate();
+        byte[] message = "too many secrets".getBytes("UTF-8");
+        byte[] signature = new SignBox(pair.getSigningKey()).sign(message);
+        assertThat(signature.length, equalTo(SignBox.SIGNATURE_LENGTH));
+        new SignBox(pair.getVerifyKey()).verify(message, signature);
+    }
+
+    @Test
+    public void testVerifyRejectsModifiedMessage() throws Exception {
+        thrown.expect(ChlorideException.class);
+        thrown.expectMessage("signature verification failed");
+        SigningKeyPair pair = SigningKeyPair.generate();
+        byte[] signature = new SignBox(pair.getSigningKey()).sign("too many secrets".getBytes("UTF-8"));
+        new SignBox(pair.getVerifyKey()).verify("too many secretz".getBytes("UTF-8"), signature);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testVerifyOnlyBoxCannotSign() throws Exception {
+        new SignBox(SigningKeyPair.generate().getVerifyKey()).sign(new byte[0]);
+    }
+
+    @Test
+    public void testVerifyAllReportsFailures() throws Exception {
+        SigningKeyPair pair = SigningKeyPair.generate();
+        SignBox box = new SignBox(pair.getSigningKey());
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] message = ("event " + i).getBytes("UTF-8");
+            messages.add(message);
+            signatures.add(box.sign(message));
+        }
+
+        signatures.get(7)[0] ^= 1;
+        signatures.set(150, new byte[10]);
+
+        BatchResult result = box.verifyAll(messages, signatures);
+        assertThat(result.size(), equalTo(200));
+        assertThat(result.getFailures(), equalTo(Arrays.asList(7, 150)));
+        assertThat(result.get(8), equalTo(messages.get(8)));
+        assertThat(result.getError(150).getMessage(), equalTo("invalid signature length"));
+    }
+
+    @Test
+    public void testVerifyAllOnExecutor() throws Exception {
+        SigningKeyPair pair = SigningKeyPair.generate();
+        SignBox box = new SignBox(pair.getSigningKey());
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            byte[] message = ("event " + i).getBytes("UTF-8");
+            messages.add(message);
+            signatures.add(box.sign(message));
+        }
+
+        signatures.get(3)[0] ^= 1;
+        signatures.get(250)[0] ^= 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BatchResult result = box.verifyAll(messages, signatures, executor);
+            assertThat(result.size(), equalTo(300));
+            assertThat(result.getFailures(), equalTo(Arrays.asList(3, 250)));
+            assertThat(result.get(299), equalTo(messages.get(299)));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testVerifyAllWithManyKeys() throws Exception {
+        List<VerifyKey> keys = new ArrayList<>();
+        List<byte[]> messages = new ArrayList<>();
+        List<byte[]> signatures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            SigningKeyPair pair = SigningKeyPair.generate();
+            byte[] message = ("event " + i).getBytes("UTF-8");
+            keys.add(pair.getVerifyKey());
+            messages.add(message);
+            signatures.add(new SignBox(pair.getSigningKey()).sign(message));
+        }
+
+        keys.set(2, keys.get(3));
+        BatchResult result = SignBox.verifyAll(keys, messages, signatures);
+        assertThat(result.getFailures(), equalTo(Arrays.asList(2)));
+    }
+}
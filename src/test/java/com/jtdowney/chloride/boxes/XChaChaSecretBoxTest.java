@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.boxes;
+
+import com.jtdowney.chloride.ChlorideTest;
+import com.jtdowney.chloride.keys.SecretKey;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class XChaChaSecretBoxTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    @Test
+    public void testEncryptAndDecrypt() throws Exception {
+        XChaChaSecretBox box = new XChaChaSecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        assertThat(ciphertext[0], equalTo(XChaChaSecretBox.ALGORITHM_ID));
+        assertThat(ciphertext.length, equalTo(box.outputSize(16)));
+        assertThat(box.decrypt(ciphertext), equalTo("too many secrets".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void testMalleabilityProtection() throws Exception {
+        thrown.expectMessage("mac check in ChaCha20Poly1305 failed");
+        XChaChaSecretBox box = new XChaChaSecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        ciphertext[30] -= 1;
+        box.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testRejectsOtherAlgorithms() throws Exception {
+        thrown.expectMessage("unsupported algorithm identifier");
+        XChaChaSecretBox box = new XChaChaSecretBox(SecretKey.generate());
+        byte[] ciphertext = box.encrypt("too many secrets".getBytes("UTF-8"));
+        ciphertext[0] = 0x7f;
+        box.decrypt(ciphertext);
+    }
+
+    @Test
+    public void testHChaCha20() throws Exception {
+        // Test vector from draft-irtf-cfrg-xchacha section 2.2.1
+        byte[] key = Hex.decode("000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f");
+        byte[] nonce = Hex.decode("000000090000004a0000000031415927");
+        byte[] expected = Hex.decode("82413b4227b27bfed30e42508a877d73a0f9e4d58a74a853c12ec41326d3ecdc");
+        assertThat(XChaChaSecretBox.hChaCha20(key, nonce), equalTo(expected));
+    }
+}
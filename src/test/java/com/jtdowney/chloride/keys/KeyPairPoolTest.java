@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideException;
+import com.jtdowney.chloride.ChlorideTest;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class KeyPairPoolTest extends ChlorideTest {
+    @Test
+    public void testKeyPairsAreSingleUse() throws Exception {
+        try (KeyPairPool pool = new KeyPairPool(Curve.X25519, 8)) {
+            Set<PublicKey> keys = new HashSet<>();
+            for (int i = 0; i < 32; i++) {
+                keys.add(pool.take().getPublicKey());
+            }
+
+            assertThat(keys.size(), equalTo(32));
+            assertThat(pool.getHits() + pool.getMisses(), equalTo(32L));
+        }
+    }
+
+    @Test
+    public void testMissWhenClosed() throws Exception {
+        KeyPairPool pool = new KeyPairPool(Curve.P256, 2);
+        pool.close();
+        KeyPair pair = pool.take();
+        assertThat(pair.getPublicKey().getCurve(), equalTo(Curve.P256));
+        assertThat(pool.getMisses(), equalTo(1L));
+    }
+
+    @Test
+    public void testGeneratorFailureIsThrownAndGenerationRestarts() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        try (KeyPairPool pool = new KeyPairPool(Curve.X25519, 4) {
+            @Override
+            KeyPair generate() throws ChlorideException {
+                if (calls.getAndIncrement() == 0) {
+                    throw new ChlorideException(new IllegalStateException("generator failed"));
+                }
+
+                return super.generate();
+            }
+        }) {
+            ChlorideException failure = null;
+            for (int i = 0; i < 1000 && failure == null; i++) {
+                try {
+                    pool.take();
+                    Thread.sleep(1);
+                } catch (ChlorideException e) {
+                    failure = e;
+                }
+            }
+
+            assertThat(failure.getMessage(), equalTo("generator failed"));
+
+            for (int i = 0; i < 1000 && pool.size() == 0; i++) {
+                Thread.sleep(1);
+            }
+
+            assertTrue(pool.size() > 0);
+            pool.take();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2015 John Downey
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.jtdowney.chloride.keys;
+
+import com.jtdowney.chloride.ChlorideTest;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class PasswordKdfTest extends ChlorideTest {
+    @Test
+    public void testArgon2idIsDeterministic() throws Exception {
+        PasswordKdf kdf = PasswordKdf.argon2id(1024, 1, 2);
+        byte[] salt = PasswordKdf.generateSalt();
+        assertThat(kdf.deriveKey("hunter2".toCharArray(), salt), equalTo(kdf.deriveKey("hunter2".toCharArray(), salt)));
+        assertThat(kdf.deriveKey("hunter2".toCharArray(), salt), not(equalTo(kdf.deriveKey("hunter3".toCharArray(), salt))));
+        assertThat(kdf.deriveKey("hunter2".toCharArray(), salt), not(equalTo(kdf.deriveKey("hunter2".toCharArray(), PasswordKdf.generateSalt()))));
+    }
+
+    @Test
+    public void testScryptVector() {
+        // RFC 7914 section 12, truncated to 32 bytes
+        PasswordKdf kdf = PasswordKdf.scrypt(16384, 8, 1);
+        SecretKey key = kdf.deriveKey("pleaseletmein".toCharArray(), "SodiumChloride".getBytes());
+        assertThat(key.getBytes(), equalTo(Hex.decode("7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2")));
+        assertThat(kdf.getCost(), equalTo(16384));
+        assertThat(kdf.getBlockSize(), equalTo(8));
+        assertThat(kdf.getMemoryKiB(), equalTo(0));
+    }
+
+    @Test
+    public void testCalibrate() {
+        PasswordKdf kdf = PasswordKdf.calibrate(50, 16 * 1024, 1);
+        assertThat(kdf.getAlgorithm(), equalTo(PasswordKdf.Algorithm.ARGON2ID));
+        assertThat(kdf.getIterations() >= 1, equalTo(true));
+        assertThat(kdf.getMemoryKiB() <= 16 * 1024, equalTo(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortSalt() {
+        PasswordKdf.argon2id(1024, 1, 1).deriveKey("hunter2".toCharArray(), new byte[4]);
+    }
+}
@@ -37,4 +37,12 @@ public class PrivateKeyTest extends ChlorideTest {
         PrivateKey newPrivateKey = new PrivateKey(data);
         assertThat(privateKey, equalTo(newPrivateKey));
     }
+
+    @Test
+    public void testX25519GetBytes() throws Exception {
+        PrivateKey privateKey = KeyPair.generate(Curve.X25519).getPrivateKey();
+        PrivateKey newPrivateKey = new PrivateKey(privateKey.getBytes());
+        assertThat(newPrivateKey.getCurve(), equalTo(Curve.X25519));
+        assertThat(privateKey, equalTo(newPrivateKey));
+    }
 }
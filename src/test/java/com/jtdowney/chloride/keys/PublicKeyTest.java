@@ -22,13 +22,21 @@
 
 package com.jtdowney.chloride.keys;
 
+import com.jtdowney.chloride.ChlorideException;
 import com.jtdowney.chloride.ChlorideTest;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class PublicKeyTest extends ChlorideTest {
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
     @Test
     public void testGetBytes() throws Exception {
         KeyPair pair = KeyPair.generate();
@@ -37,4 +45,55 @@ public class PublicKeyTest extends ChlorideTest {
         PublicKey newPublicKey = new PublicKey(data);
         assertThat(publicKey, equalTo(newPublicKey));
     }
+
+    @Test
+    public void testX25519GetBytes() throws Exception {
+        PublicKey publicKey = KeyPair.generate(Curve.X25519).getPublicKey();
+        PublicKey newPublicKey = new PublicKey(publicKey.getBytes());
+        assertThat(newPublicKey.getCurve(), equalTo(Curve.X25519));
+        assertThat(publicKey, equalTo(newPublicKey));
+    }
+
+    @Test
+    public void testRawBytes() throws Exception {
+        for (Curve curve : Curve.values()) {
+            PublicKey publicKey = KeyPair.generate(curve).getPublicKey();
+            byte[] raw = publicKey.getRawBytes();
+            assertThat(raw.length, equalTo(curve.getRawLength()));
+            assertThat(PublicKey.fromRawBytes(curve, raw), equalTo(publicKey));
+        }
+    }
+
+    @Test
+    public void testInvalidRawBytes() throws Exception {
+        thrown.expect(ChlorideException.class);
+        byte[] raw = KeyPair.generate().getPublicKey().getRawBytes();
+        raw[64] ^= 1;
+        PublicKey.fromRawBytes(Curve.P256, raw);
+    }
+
+    @Test
+    public void testCompressedBytes() throws Exception {
+        PublicKey publicKey = KeyPair.generate().getPublicKey();
+        byte[] compressed = publicKey.getCompressedBytes();
+        assertThat(compressed.length, equalTo(Curve.P256.getCompressedLength()));
+        assertThat(PublicKey.fromRawBytes(Curve.P256, compressed), equalTo(publicKey));
+    }
+
+    @Test
+    public void testDecodedKeysAreCached() throws Exception {
+        byte[] data = KeyPair.generate().getPublicKey().getBytes();
+        assertThat(new PublicKey(data).getKey(), sameInstance(new PublicKey(data).getKey()));
+        byte[] raw = new PublicKey(data).getCompressedBytes();
+        assertThat(PublicKey.fromRawBytes(Curve.P256, raw).getKey(), sameInstance(PublicKey.fromRawBytes(Curve.P256, raw).getKey()));
+    }
+
+    @Test
+    public void testUncachedDecodeSkipsCache() throws Exception {
+        PublicKey publicKey = KeyPair.generate(Curve.X25519).getPublicKey();
+        byte[] raw = publicKey.getRawBytes();
+        PublicKey uncached = PublicKey.fromRawBytesUncached(Curve.X25519, raw);
+        assertThat(uncached, equalTo(publicKey));
+        assertThat(uncached.getKey(), not(sameInstance(PublicKey.fromRawBytesUncached(Curve.X25519, raw).getKey())));
+    }
 }
@@ -42,4 +42,18 @@ public class SecretKeyTest extends ChlorideTest {
         SecretKey key2 = SecretKey.generate();
         assertThat(key1, not(equalTo(key2)));
     }
+
+    @Test
+    public void testDeriveSubkeyIsDeterministic() throws Exception {
+        SecretKey key = SecretKey.generate();
+        assertThat(key.deriveSubkey("tenant", 42), equalTo(key.deriveSubkey("tenant", 42)));
+    }
+
+    @Test
+    public void testDeriveSubkeyIsDistinct() throws Exception {
+        SecretKey key = SecretKey.generate();
+        assertThat(key.deriveSubkey("tenant", 42), not(equalTo(key.deriveSubkey("tenant", 43))));
+        assertThat(key.deriveSubkey("tenant", 42), not(equalTo(key.deriveSubkey("session", 42))));
+        assertThat(key.deriveSubkey("tenant", 42), not(equalTo(key)));
+    }
 }